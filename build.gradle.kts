@@ -1,5 +1,6 @@
 import nebula.plugin.contacts.Contact
 import nebula.plugin.contacts.ContactsExtension
+import java.io.ByteArrayOutputStream
 
 plugins {
     `java-library`
@@ -15,6 +16,8 @@ plugins {
 
     id("nebula.javadoc-jar") version "18.4.0"
     id("nebula.source-jar") version "18.4.0"
+
+    id("me.champeau.jmh") version "0.6.8"
 }
 
 apply(plugin = "nebula.publish-verification")
@@ -59,6 +62,9 @@ dependencies {
     implementation(platform("org.openrewrite.recipe:rewrite-recipe-bom:${rewriteBomVersion}"))
 
     implementation("org.openrewrite:rewrite-java")
+    implementation("org.ow2.asm:asm-analysis:latest.release")
+    // reading memory-mapped LST cache entries, in the version rewrite-core already depends on
+    implementation("com.fasterxml.jackson.core:jackson-databind")
     runtimeOnly("org.openrewrite:rewrite-java-17")
     // Need to have a slf4j binding to see any output enabled from the parser.
     runtimeOnly("ch.qos.logback:logback-classic:1.2.+")
@@ -69,6 +75,15 @@ dependencies {
 
     testImplementation("org.openrewrite:rewrite-test")
     testImplementation("org.assertj:assertj-core:latest.release")
+
+    jmhImplementation(platform("org.openrewrite.recipe:rewrite-recipe-bom:${rewriteBomVersion}"))
+    jmhImplementation("org.openrewrite:rewrite-java")
+    jmhRuntimeOnly("org.openrewrite:rewrite-java-17")
+}
+
+jmh {
+    // allocation rates are part of what the benchmarks report
+    profilers.add("gc")
 }
 
 tasks.named<Test>("test") {
@@ -84,6 +99,96 @@ tasks.named<JavaCompile>("compileJava") {
     options.release.set(8)
 }
 
+// The javac plugin recording instance access while the sources to change are compiled uses com.sun.source, which
+// --release 8 doesn't expose, so it is compiled on its own against the main classes and packaged with them.
+val javacPlugin: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+configurations[javacPlugin.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[javacPlugin.compileOnlyConfigurationName].extendsFrom(configurations.compileOnly.get())
+configurations[javacPlugin.annotationProcessorConfigurationName].extendsFrom(configurations.annotationProcessor.get())
+tasks.named<JavaCompile>(javacPlugin.compileJavaTaskName) {
+    options.release.set(11)
+}
+tasks.named<Jar>("jar") {
+    from(javacPlugin.output)
+}
+sourceSets.test {
+    compileClasspath += javacPlugin.output
+    runtimeClasspath += javacPlugin.output
+}
+
+// AppCDS archive of the classes loaded while running the recipe, so that short runs (pre-commit hooks, single
+// files) don't spend most of their time loading and verifying rewrite-java. Classes are only archived from jars,
+// which is why the project jar is used rather than the classes directory.
+val cdsDir = layout.buildDirectory.dir("cds")
+val cdsArchive = cdsDir.map { it.file("recipe.jsa") }
+val cdsClasspath = files(tasks.named("jar"), configurations.runtimeClasspath)
+val cdsJavaLauncher = javaToolchains.launcherFor(java.toolchain)
+
+val cdsTrainingRun by tasks.registering(JavaExec::class) {
+    group = "cds"
+    description = "Runs the recipe over this project's sources and dumps the loaded classes to an AppCDS archive."
+    classpath = cdsClasspath
+    mainClass.set("com.sharpdev.RecipeRunner")
+    javaLauncher.set(cdsJavaLauncher)
+    args("--root", file("src/main/java").path)
+    jvmArgs("-XX:ArchiveClassesAtExit=${cdsArchive.get().asFile}")
+    standardOutput = ByteArrayOutputStream()
+    inputs.files(cdsClasspath)
+    outputs.file(cdsArchive)
+    doFirst {
+        cdsDir.get().asFile.mkdirs()
+    }
+}
+
+val cdsLauncher by tasks.registering {
+    group = "cds"
+    description = "Writes build/cds/rewrite-rspec-2325, a launcher for RecipeRunner that uses the AppCDS archive."
+    dependsOn(cdsTrainingRun)
+    val script = cdsDir.map { it.file("rewrite-rspec-2325") }
+    outputs.file(script)
+    doLast {
+        val java = cdsJavaLauncher.get().executablePath.asFile
+        script.get().asFile.writeText(
+            "#!/bin/sh\n" +
+            "exec \"$java\" -XX:SharedArchiveFile=\"${cdsArchive.get().asFile}\" -Xshare:auto " +
+            "-cp \"${cdsClasspath.asPath}\" com.sharpdev.RecipeRunner \"\$@\"\n"
+        )
+        script.get().asFile.setExecutable(true)
+    }
+}
+
+val measureCdsStartup by tasks.registering {
+    group = "cds"
+    description = "Compares the time to the first result of a single-file run with and without the AppCDS archive."
+    dependsOn(cdsTrainingRun)
+    doLast {
+        val sample = cdsDir.get().dir("sample").asFile
+        sample.deleteRecursively()
+        file("src/main/java/com/sharpdev/MakePrivateOrFinalMethodsStatic.java")
+            .copyTo(sample.resolve("MakePrivateOrFinalMethodsStatic.java"))
+
+        val java = cdsJavaLauncher.get().executablePath.asFile.path
+        fun timeRun(vararg jvmArgs: String): Long {
+            val start = System.nanoTime()
+            exec {
+                commandLine(listOf(java) + jvmArgs + listOf("-cp", cdsClasspath.asPath,
+                    "com.sharpdev.RecipeRunner", "--root", sample.path))
+                standardOutput = ByteArrayOutputStream()
+            }
+            return (System.nanoTime() - start) / 1_000_000
+        }
+
+        val runs = 5
+        timeRun()
+        val withoutCds = (1..runs).map { timeRun() }.sorted()[runs / 2]
+        val withCds = (1..runs).map { timeRun("-XX:SharedArchiveFile=${cdsArchive.get().asFile}") }.sorted()[runs / 2]
+        logger.lifecycle("Single-file run, median of $runs: $withoutCds ms without the AppCDS archive, $withCds ms with it")
+    }
+}
+
 configure<ContactsExtension> {
     val j = Contact("team@moderne.io")
     j.moniker("Team Moderne")
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+
+import java.nio.file.Paths;
+
+/**
+ * Adds an {@link InstanceAccessTaskListener} to a compilation, writing to the directory given as its only argument:
+ * {@code javac -Xplugin:"InstanceAccess build/instance-access" ...}, with the recipe and its dependencies on the
+ * processor path.
+ */
+public class InstanceAccessPlugin implements Plugin {
+
+    @Override
+    public String getName() {
+        return "InstanceAccess";
+    }
+
+    @Override
+    public void init(JavacTask task, String... args) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Expected the directory to write instance access to, as in " +
+                                               "-Xplugin:\"InstanceAccess build/instance-access\", got " + args.length + " arguments");
+        }
+        task.addTaskListener(new InstanceAccessTaskListener(task, Paths.get(args[0])));
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import com.sharpdev.InstanceAccessRules.Use;
+import com.sun.source.tree.*;
+import com.sun.source.util.*;
+import org.openrewrite.internal.lang.Nullable;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Records, as javac finishes analyzing each top-level class, whether every method of it and its member classes
+ * accesses the instance directly and which instance methods of its own class it calls, by the same
+ * {@link InstanceAccessRules} as {@link InstanceAccessSummary}, to the file {@link InstanceAccessMarkers} reads.
+ * <p>
+ * javac has resolved every name by then, so this only has to look at the trees it already built rather than
+ * attributing the bodies a second time.
+ */
+public class InstanceAccessTaskListener implements TaskListener {
+
+    private final Trees trees;
+    private final Types types;
+    private final Elements elements;
+    private final Path directory;
+
+    public InstanceAccessTaskListener(JavacTask task, Path directory) {
+        this.trees = Trees.instance(task);
+        this.types = task.getTypes();
+        this.elements = task.getElements();
+        this.directory = directory;
+    }
+
+    @Override
+    public void finished(TaskEvent e) {
+        TypeElement type = e.getTypeElement();
+        if (e.getKind() != TaskEvent.Kind.ANALYZE || type == null) {
+            return;
+        }
+        TreePath path = trees.getPath(type);
+        if (path == null) {
+            return;
+        }
+
+        Path file = InstanceAccessMarkers.file(directory, elements.getBinaryName(type).toString());
+        try {
+            List<String> lines = new ArrayList<>();
+            lines.add(InstanceAccessMarkers.sourceHash(e.getCompilationUnit().getSourceFile().getCharContent(true)));
+            new Scan(lines).scan(path, null);
+            Files.createDirectories(file.getParent());
+            Files.write(file, lines, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private String key(ExecutableElement method) {
+        StringBuilder signature = new StringBuilder(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                signature.append(',');
+            }
+            signature.append(erasure(parameters.get(i).asType()));
+        }
+        TypeElement declaringClass = (TypeElement) method.getEnclosingElement();
+        return InstanceAccessMarkers.key(elements.getBinaryName(declaringClass).toString(),
+                signature.append(')').toString());
+    }
+
+    /**
+     * @return The erasure of a type as {@link BytecodeStaticAnalysis#signature(org.openrewrite.java.tree.JavaType.Method)}
+     * writes it.
+     */
+    private String erasure(TypeMirror type) {
+        TypeMirror erased = types.erasure(type);
+        switch (erased.getKind()) {
+            case ARRAY:
+                return erasure(((ArrayType) erased).getComponentType()) + "[]";
+            case DECLARED:
+                return elements.getBinaryName((TypeElement) ((DeclaredType) erased).asElement()).toString();
+            default:
+                return erased.getKind().isPrimitive() ? erased.toString() : "?";
+        }
+    }
+
+    @Nullable
+    private static ExecutableElement executable(@Nullable Element element) {
+        return element instanceof ExecutableElement ? (ExecutableElement) element : null;
+    }
+
+    private static boolean isStatic(Element element) {
+        return element.getModifiers().contains(Modifier.STATIC);
+    }
+
+    private static boolean isThisOrSuper(Name name) {
+        return name.contentEquals("this") || name.contentEquals("super");
+    }
+
+    /**
+     * A method with a body, still open while the trees within its body are scanned.
+     */
+    private static class Frame {
+        @Nullable
+        final TypeElement rootType;
+
+        /**
+         * How many local or anonymous class bodies within the method enclose the tree being scanned.
+         */
+        int classBodyDepth;
+
+        /**
+         * The number of classes that enclosed the method when it was entered.
+         */
+        final int classBase;
+
+        boolean accessesInstanceDirectly;
+        final Set<String> callees = new TreeSet<>();
+        boolean declaresClasses;
+
+        Frame(@Nullable TypeElement rootType, int classBase) {
+            this.rootType = rootType;
+            this.classBase = classBase;
+        }
+    }
+
+    private class Scan extends TreePathScanner<Void, Void> {
+        private final List<String> lines;
+        private final Deque<Frame> open = new ArrayDeque<>();
+        /**
+         * The classes enclosing the tree being scanned, innermost last. A class may be null.
+         */
+        private final List<TypeElement> classes = new ArrayList<>();
+
+        Scan(List<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public Void visitClass(ClassTree node, Void p) {
+            for (Frame frame : open) {
+                frame.classBodyDepth++;
+                frame.declaresClasses = true;
+            }
+            classes.add((TypeElement) trees.getElement(getCurrentPath()));
+            super.visitClass(node, p);
+            classes.remove(classes.size() - 1);
+            for (Frame frame : open) {
+                frame.classBodyDepth--;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitMethod(MethodTree node, Void p) {
+            if (node.getBody() == null) {
+                return null;
+            }
+            Frame frame = new Frame(classes.get(classes.size() - 1), classes.size());
+            open.push(frame);
+            scan(node.getBody(), p);
+            open.pop();
+
+            Element method = trees.getElement(getCurrentPath());
+            if (method != null && method.getKind() == ElementKind.METHOD) {
+                lines.add(InstanceAccessMarkers.line(key((ExecutableElement) method), frame.accessesInstanceDirectly,
+                        frame.callees, frame.declaresClasses));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree node, Void p) {
+            Tree parent = getCurrentPath().getParentPath().getLeaf();
+            if (isThisOrSuper(node.getName())) {
+                thisOrSuper(selected(node));
+            } else if (parent instanceof MethodInvocationTree && ((MethodInvocationTree) parent).getMethodSelect() == node) {
+                call(executable(trees.getElement(getCurrentPath())));
+            } else {
+                variable(trees.getElement(getCurrentPath()));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree node, Void p) {
+            if (isThisOrSuper(node.getIdentifier())) {
+                for (Frame frame : open) {
+                    use(frame, InstanceAccessRules.qualifiedThisOrSuper(), null);
+                }
+            } else if (node.getExpression() instanceof IdentifierTree &&
+                       isThisOrSuper(((IdentifierTree) node.getExpression()).getName())) {
+                // the name of a field selected from any other expression is not one of the instance
+                variable(trees.getElement(getCurrentPath()));
+            }
+            return super.visitMemberSelect(node, p);
+        }
+
+        @Override
+        public Void visitNewClass(NewClassTree node, Void p) {
+            if (node.getEnclosingExpression() == null) {
+                newInstance(trees.getElement(new TreePath(getCurrentPath(), node.getIdentifier())));
+            }
+            return super.visitNewClass(node, p);
+        }
+
+        /**
+         * @return The method called in {@code this.run()} or referred to in {@code this::run} when 'this' is used
+         * that way, or null otherwise.
+         */
+        @Nullable
+        private ExecutableElement selected(IdentifierTree node) {
+            if (!node.getName().contentEquals("this")) {
+                return null;
+            }
+            TreePath parentPath = getCurrentPath().getParentPath();
+            Tree parent = parentPath.getLeaf();
+            if (parent instanceof MemberSelectTree && ((MemberSelectTree) parent).getExpression() == node) {
+                Tree grandparent = parentPath.getParentPath().getLeaf();
+                if (grandparent instanceof MethodInvocationTree &&
+                    ((MethodInvocationTree) grandparent).getMethodSelect() == parent) {
+                    return executable(trees.getElement(parentPath));
+                }
+            } else if (parent instanceof MemberReferenceTree &&
+                       ((MemberReferenceTree) parent).getQualifierExpression() == node) {
+                return executable(trees.getElement(parentPath));
+            }
+            return null;
+        }
+
+        /**
+         * @param callee The method called, when the use may be a call of an instance method of the class of the method.
+         */
+        private void use(Frame frame, Use use, @Nullable ExecutableElement callee) {
+            if (use == Use.CALLEE && callee != null) {
+                frame.callees.add(key(callee));
+            } else if (use == Use.INSTANCE) {
+                frame.accessesInstanceDirectly = true;
+            }
+        }
+
+        private void thisOrSuper(@Nullable ExecutableElement selected) {
+            for (Frame frame : open) {
+                use(frame, InstanceAccessRules.thisOrSuper(frame.classBodyDepth > 0, selected != null,
+                        selected != null && isStatic(selected),
+                        selected != null && Objects.equals(frame.rootType, selected.getEnclosingElement())), selected);
+            }
+        }
+
+        private void variable(@Nullable Element element) {
+            if (element == null || element.getKind() != ElementKind.FIELD) {
+                return;
+            }
+            Element owner = element.getEnclosingElement();
+            for (Frame frame : open) {
+                boolean inClassBody = frame.classBodyDepth > 0;
+                use(frame, InstanceAccessRules.variable(isStatic(element), Objects.equals(frame.rootType, owner), true,
+                        inClassBody, inClassBody && outerMember(frame, owner)), null);
+            }
+        }
+
+        private void newInstance(@Nullable Element created) {
+            boolean innerClass = created != null && created.getKind() == ElementKind.CLASS && !isStatic(created) &&
+                                 ((TypeElement) created).getNestingKind() == NestingKind.MEMBER;
+            for (Frame frame : open) {
+                use(frame, InstanceAccessRules.newInstance(innerClass,
+                        innerClass && ownedByEnclosingClass(frame, created.getEnclosingElement())), null);
+            }
+        }
+
+        private boolean ownedByEnclosingClass(Frame frame, Element owner) {
+            for (Element enclosing = frame.rootType; enclosing != null; enclosing = enclosing.getEnclosingElement()) {
+                if (enclosing.equals(owner)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if an instance member of the type, used without a select within a local or anonymous class in
+         * the method of the frame, is one of the instance of that method or of an enclosing instance.
+         */
+        private boolean outerMember(Frame frame, Element owner) {
+            if (!(owner instanceof TypeElement)) {
+                return false;
+            }
+            boolean inheritedWithinMethod = false;
+            for (int i = frame.classBase; i < classes.size() && !inheritedWithinMethod; i++) {
+                inheritedWithinMethod = inherits(classes.get(i), owner);
+            }
+            boolean inheritedByInstance = false;
+            for (Element enclosing = frame.rootType; enclosing != null && !inheritedByInstance; enclosing = enclosing.getEnclosingElement()) {
+                inheritedByInstance = enclosing instanceof TypeElement && inherits(enclosing, owner);
+            }
+            return InstanceAccessRules.outerMember(inheritedWithinMethod, inheritedByInstance);
+        }
+
+        private boolean inherits(@Nullable Element type, Element owner) {
+            return type != null && types.isSubtype(types.erasure(type.asType()), types.erasure(owner.asType()));
+        }
+
+        private void call(@Nullable ExecutableElement method) {
+            for (Frame frame : open) {
+                boolean inClassBody = frame.classBodyDepth > 0;
+                use(frame, method == null ? InstanceAccessRules.call(false, false, false, inClassBody, false) :
+                        InstanceAccessRules.call(true, isStatic(method),
+                                Objects.equals(frame.rootType, method.getEnclosingElement()), inClassBody,
+                                inClassBody && outerMember(frame, method.getEnclosingElement())), method);
+            }
+        }
+    }
+}
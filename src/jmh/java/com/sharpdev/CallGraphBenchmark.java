@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openjdk.jmh.annotations.*;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.Statement;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building and solving the calls between the methods of a generated class with {@link CompactCallGraph}
+ * and with the boxed maps and sets it replaced. The bodies are searched once in the setup, so only the call graph is
+ * measured; with the gc profiler, the allocation per operation is the memory each representation needs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CallGraphBenchmark {
+
+    @Param({"20000"})
+    int methods;
+
+    String[] keys;
+    boolean[] accessesInstance;
+    String[][] callees;
+
+    @Setup
+    public void setup() {
+        InMemoryExecutionContext ctx = new InMemoryExecutionContext();
+        J.CompilationUnit cu = JavaParser.fromJavaVersion().build()
+                .parse(ctx, GeneratedSources.callGraphClass("Generated", methods)).get(0);
+        InstanceAccessSummary summary = InstanceAccessSummary.of(cu, ctx);
+
+        keys = new String[methods];
+        accessesInstance = new boolean[methods];
+        callees = new String[methods][];
+        int i = 0;
+        for (Statement statement : cu.getClasses().get(0).getBody().getStatements()) {
+            if (statement instanceof J.MethodDeclaration) {
+                J.MethodDeclaration md = (J.MethodDeclaration) statement;
+                InstanceAccessSummary.MethodSummary access = summary.get(md);
+                keys[i] = summary.methodKey(md.getMethodType());
+                accessesInstance[i] = access.isAccessesInstanceDirectly();
+                callees[i] = access.getCallees().toArray(new String[0]);
+                i++;
+            }
+        }
+    }
+
+    @Benchmark
+    public BitSet compact() {
+        CompactCallGraph.Builder builder = new CompactCallGraph.Builder();
+        for (int i = 0; i < keys.length; i++) {
+            int id = builder.method(keys[i]);
+            if (!accessesInstance[i]) {
+                builder.candidate(id);
+                for (String callee : callees[i]) {
+                    builder.call(id, builder.method(callee));
+                }
+            }
+        }
+        return builder.build().solve();
+    }
+
+    @Benchmark
+    public Set<String> objectGraph() {
+        Set<String> candidates = new HashSet<>();
+        Map<String, Set<String>> calleesByCandidate = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            candidates.add(keys[i]);
+            if (!accessesInstance[i]) {
+                calleesByCandidate.put(keys[i], new HashSet<>(Arrays.asList(callees[i])));
+            }
+        }
+
+        Map<String, List<String>> callers = new HashMap<>();
+        Map<String, Integer> pendingCallees = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+        for (Map.Entry<String, Set<String>> candidate : calleesByCandidate.entrySet()) {
+            int pending = 0;
+            for (String callee : candidate.getValue()) {
+                if (!candidates.contains(callee)) {
+                    pending = -1;
+                    break;
+                }
+                callers.computeIfAbsent(callee, key -> new ArrayList<>()).add(candidate.getKey());
+                pending++;
+            }
+            if (pending == 0) {
+                ready.add(candidate.getKey());
+            } else if (pending > 0) {
+                pendingCallees.put(candidate.getKey(), pending);
+            }
+        }
+
+        Set<String> eligible = new HashSet<>();
+        while (!ready.isEmpty()) {
+            String key = ready.poll();
+            if (!eligible.add(key)) {
+                continue;
+            }
+            for (String caller : callers.getOrDefault(key, Collections.emptyList())) {
+                Integer pending = pendingCallees.get(caller);
+                if (pending == null) {
+                    continue;
+                }
+                if (pending == 1) {
+                    pendingCallees.remove(caller);
+                    ready.add(caller);
+                } else {
+                    pendingCallees.put(caller, pending - 1);
+                }
+            }
+        }
+        return eligible;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import java.util.Random;
+
+/**
+ * Synthetic sources with a controlled mix of the method shapes the recipe has to tell apart.
+ */
+final class GeneratedSources {
+
+    private GeneratedSources() {
+    }
+
+    /**
+     * @param className The name of the generated class.
+     * @param methods   The number of private methods: a quarter read an instance field, a quarter call the next
+     *                  method, a quarter update a static field and a quarter only use locals.
+     */
+    static String mixedClass(String className, int methods) {
+        StringBuilder source = new StringBuilder("class ").append(className).append(" {\n")
+                .append("    int field;\n")
+                .append("    static int counter;\n");
+        for (int i = 0; i < methods; i++) {
+            source.append("    private int m").append(i).append("() {\n");
+            switch (i % 4) {
+                case 0:
+                    source.append("        return field + ").append(i).append(";\n");
+                    break;
+                case 1:
+                    source.append(i + 1 < methods ? "        return m" + (i + 1) + "() + " + i + ";\n" : "        return " + i + ";\n");
+                    break;
+                case 2:
+                    source.append("        counter += ").append(i).append(";\n")
+                            .append("        return counter;\n");
+                    break;
+                default:
+                    source.append("        int x = ").append(i).append(";\n")
+                            .append("        for (int k = 0; k < 3; k++) {\n")
+                            .append("            x += k;\n")
+                            .append("        }\n")
+                            .append("        return x;\n");
+            }
+            source.append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    /**
+     * @param className The name of the generated class.
+     * @param methods   The number of private methods. Each calls up to three others picked at random, so that the
+     *                  calls form long chains and cycles, and one in ten reads an instance field.
+     */
+    static String callGraphClass(String className, int methods) {
+        Random random = new Random(methods);
+        StringBuilder source = new StringBuilder("class ").append(className).append(" {\n")
+                .append("    int field;\n");
+        for (int i = 0; i < methods; i++) {
+            source.append("    private int m").append(i).append("() {\n")
+                    .append("        return ").append(i % 10 == 0 ? "field" : String.valueOf(i));
+            for (int calls = random.nextInt(4); calls > 0; calls--) {
+                source.append(" + m").append(random.nextInt(methods)).append("()");
+            }
+            source.append(";\n")
+                    .append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+}
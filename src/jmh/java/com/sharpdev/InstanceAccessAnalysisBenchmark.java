@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openjdk.jmh.annotations.*;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.scheduling.WatchableExecutionContext;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares deciding which methods can be made static by searching their bodies in the LST with reading the
+ * compiled class file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class InstanceAccessAnalysisBenchmark {
+
+    @Param({"100", "1000"})
+    int methods;
+
+    J.CompilationUnit cu;
+    Path classes;
+
+    @Setup
+    public void setup() throws IOException {
+        String source = GeneratedSources.mixedClass("Generated", methods);
+        cu = JavaParser.fromJavaVersion().build().parse(new InMemoryExecutionContext(), source).get(0);
+        classes = SourceCompiler.compile("Generated", source);
+    }
+
+    @Benchmark
+    public J lstSearch() {
+        return run(new MakePrivateOrFinalMethodsStatic());
+    }
+
+    @Benchmark
+    public J bytecode() {
+        // a new recipe per invocation, so every invocation reads and analyzes the class file again
+        return run(new MakePrivateOrFinalMethodsStatic(null, classes.toString()));
+    }
+
+    private J run(MakePrivateOrFinalMethodsStatic recipe) {
+        return recipe.getVisitor().visit(cu, new WatchableExecutionContext(new InMemoryExecutionContext()));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openjdk.jmh.annotations.*;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.Statement;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares summarizing how the methods of a source file use their instance with the iterative scan and with the
+ * recursive visitor it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class InstanceAccessScanBenchmark {
+
+    @Param({"100", "1000"})
+    int methods;
+
+    J.CompilationUnit cu;
+    J.MethodDeclaration method;
+
+    @Setup
+    public void setup() {
+        cu = JavaParser.fromJavaVersion().build()
+                .parse(new InMemoryExecutionContext(), GeneratedSources.mixedClass("Generated", methods)).get(0);
+        for (Statement statement : cu.getClasses().get(0).getBody().getStatements()) {
+            if (statement instanceof J.MethodDeclaration) {
+                method = (J.MethodDeclaration) statement;
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public InstanceAccessSummary scan() {
+        // a new context per invocation, so that the summary isn't taken from the cache
+        InstanceAccessSummary summary = InstanceAccessSummary.of(cu, new InMemoryExecutionContext());
+        // the file is walked on the first lookup
+        summary.get(method);
+        return summary;
+    }
+
+    @Benchmark
+    public InstanceAccessSummary visitor() {
+        return InstanceAccessSummary.withVisitor(cu);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openjdk.jmh.annotations.*;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.RecipeRun;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Measures what the recipe buys at runtime: every pattern is compiled once as written and once as rewritten by
+ * {@link MakePrivateOrFinalMethodsStatic}, and both versions are called through the same interface.
+ * <p>
+ * Throughput shows the effect on calls, and the {@code gc.alloc.rate.norm} reported by the gc profiler shows the
+ * effect on allocation, e.g. a lambda that no longer captures {@code this} and is no longer allocated per evaluation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RewrittenCodeBenchmark {
+
+    private static final String HOT_LOOP = """
+            import java.util.function.IntUnaryOperator;
+
+            public class Pattern implements IntUnaryOperator {
+                private int scale(int v) {
+                    return v * 31 + 7;
+                }
+
+                public int applyAsInt(int n) {
+                    int sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        sum += scale(i);
+                    }
+                    return sum;
+                }
+            }
+            """;
+
+    private static final String LAMBDA = """
+            import java.util.function.IntUnaryOperator;
+
+            public class Pattern implements IntUnaryOperator {
+                private int scale(int v) {
+                    return v * 31 + 7;
+                }
+
+                public int applyAsInt(int n) {
+                    IntUnaryOperator f = v -> scale(v);
+                    return f.applyAsInt(n);
+                }
+            }
+            """;
+
+    private static final String LAMBDA_IN_LOOP = """
+            import java.util.function.IntUnaryOperator;
+
+            public class Pattern implements IntUnaryOperator {
+                private int scale(int v) {
+                    return v * 31 + 7;
+                }
+
+                private int apply(IntUnaryOperator f, int v) {
+                    return f.applyAsInt(v);
+                }
+
+                public int applyAsInt(int n) {
+                    int sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        sum += apply(v -> scale(v), i);
+                    }
+                    return sum;
+                }
+            }
+            """;
+
+    @Param({"hotLoop", "lambda", "lambdaInLoop"})
+    String pattern;
+
+    @Param({"before", "after"})
+    String version;
+
+    @Param({"100"})
+    int n;
+
+    IntUnaryOperator operator;
+
+    @Setup
+    public void setup() throws Exception {
+        String before;
+        switch (pattern) {
+            case "hotLoop":
+                before = HOT_LOOP;
+                break;
+            case "lambda":
+                before = LAMBDA;
+                break;
+            default:
+                before = LAMBDA_IN_LOOP;
+        }
+        String source = "before".equals(version) ? before : rewrite(before);
+        operator = (IntUnaryOperator) SourceCompiler.load("Pattern", source).getDeclaredConstructor().newInstance();
+    }
+
+    @Benchmark
+    public int call() {
+        return operator.applyAsInt(n);
+    }
+
+    private static String rewrite(String source) {
+        InMemoryExecutionContext ctx = new InMemoryExecutionContext(Throwable::printStackTrace);
+        List<J.CompilationUnit> cus = JavaParser.fromJavaVersion().build().parse(ctx, source);
+        RecipeRun run = new MakePrivateOrFinalMethodsStatic().run(cus, ctx);
+        if (run.getResults().isEmpty()) {
+            throw new IllegalStateException("Expected the recipe to change the pattern:\n" + source);
+        }
+        return run.getResults().get(0).getAfter().printAll();
+    }
+}
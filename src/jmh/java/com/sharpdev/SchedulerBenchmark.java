@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openjdk.jmh.annotations.*;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.scheduling.WatchableExecutionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the makespan of running the recipe over a skewed corpus, many small classes and a few large ones found
+ * last, on several threads taking files in the order they were found and with {@link CostAwareScheduler}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SchedulerBenchmark {
+
+    @Param({"4"})
+    int threads;
+
+    List<J.CompilationUnit> corpus;
+
+    @Setup
+    public void setup() {
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            sources.add(GeneratedSources.mixedClass("Small" + i, 20));
+        }
+        for (int i = 0; i < 2; i++) {
+            sources.add(GeneratedSources.mixedClass("Large" + i, 1500));
+        }
+        corpus = JavaParser.fromJavaVersion().build()
+                .parse(new InMemoryExecutionContext(), sources.toArray(new String[0]));
+    }
+
+    @Benchmark
+    public void fifo() throws InterruptedException {
+        Queue<J.CompilationUnit> queue = new ConcurrentLinkedQueue<>(corpus);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                J.CompilationUnit cu;
+                while ((cu = queue.poll()) != null) {
+                    run(cu);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    @Benchmark
+    public void costAware() {
+        CostAwareScheduler.run(corpus, cu -> cu.getClasses().get(0).getBody().getStatements().size(), threads,
+                SchedulerBenchmark::run);
+    }
+
+    private static void run(J.CompilationUnit cu) {
+        new MakePrivateOrFinalMethodsStatic().getVisitor()
+                .visit(cu, new WatchableExecutionContext(new InMemoryExecutionContext()));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compiles generated sources with the system Java compiler.
+ */
+final class SourceCompiler {
+
+    private SourceCompiler() {
+    }
+
+    /**
+     * @return The directory the class files were written to.
+     */
+    static Path compile(String className, String source) throws IOException {
+        Path dir = Files.createTempDirectory("rewrite-rspec-2325-classes");
+        Path sourceFile = Files.createDirectories(dir.resolve("src")).resolve(className + ".java");
+        Files.writeString(sourceFile, source);
+        if (ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", dir.toString(), sourceFile.toString()) != 0) {
+            throw new IllegalStateException("Unable to compile " + className);
+        }
+        return dir;
+    }
+
+    /**
+     * Compiles the source in a class loader of its own, so that different versions of the same class can be loaded
+     * side by side.
+     */
+    static Class<?> load(String className, String source) throws IOException, ClassNotFoundException {
+        Path dir = compile(className, source);
+        URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()}, SourceCompiler.class.getClassLoader());
+        return loader.loadClass(className);
+    }
+}
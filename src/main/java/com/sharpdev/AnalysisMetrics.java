@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.internal.lang.Nullable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the work {@link MakePrivateOrFinalMethodsStatic} does. Nothing is counted unless an instance has been
+ * attached to the {@link ExecutionContext} the recipe runs with.
+ */
+public class AnalysisMetrics {
+
+    private static final String KEY = AnalysisMetrics.class.getName();
+
+    private final LongAdder sourceFiles = new LongAdder();
+    private final LongAdder passes = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final LongAdder methodsAnalyzed = new LongAdder();
+    private final LongAdder methodsMadeStatic = new LongAdder();
+
+    public void attachTo(ExecutionContext ctx) {
+        ctx.putMessage(KEY, this);
+    }
+
+    @Nullable
+    public static AnalysisMetrics of(ExecutionContext ctx) {
+        return ctx.getMessage(KEY);
+    }
+
+    void recordSourceFile(long passes, long nodesVisited, long methodsAnalyzed, long methodsMadeStatic) {
+        this.sourceFiles.increment();
+        this.passes.add(passes);
+        this.nodesVisited.add(nodesVisited);
+        this.methodsAnalyzed.add(methodsAnalyzed);
+        this.methodsMadeStatic.add(methodsMadeStatic);
+    }
+
+    public long getSourceFiles() {
+        return sourceFiles.sum();
+    }
+
+    /**
+     * @return The number of times source files were visited to analyze their methods.
+     */
+    public long getPasses() {
+        return passes.sum();
+    }
+
+    /**
+     * @return The number of LST nodes visited, which grows with the work done but, unlike time, does not depend on
+     * the machine.
+     */
+    public long getNodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    public long getMethodsAnalyzed() {
+        return methodsAnalyzed.sum();
+    }
+
+    public long getMethodsMadeStatic() {
+        return methodsMadeStatic.sum();
+    }
+}
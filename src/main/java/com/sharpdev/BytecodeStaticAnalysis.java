@@ -0,0 +1,280 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+import org.openrewrite.internal.lang.Nullable;
+import org.openrewrite.java.tree.JavaType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which private or final methods can be made static from compiled class files.
+ * <p>
+ * In an instance method, local slot 0 always holds {@code this}. A method needs its instance exactly when a value
+ * loaded from slot 0 is consumed by anything other than the receiver of a call to another method of the same class
+ * that can itself be made static. Capturing {@code this} for a lambda counts as a call to the method holding the
+ * lambda body, since the lambda no longer captures anything once the body doesn't need the instance.
+ * <p>
+ * One analysis may be shared by recipes running on several threads; every class file is analyzed at most once.
+ */
+public class BytecodeStaticAnalysis {
+
+    private static final int CANDIDATE_ACCESS = Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL;
+    private static final int EXCLUDED_ACCESS = Opcodes.ACC_STATIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE |
+                                               Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE;
+    private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+
+    private final Path classesDirectory;
+    private final Map<String, Optional<Set<String>>> eligibleByClass = new ConcurrentHashMap<>();
+
+    public BytecodeStaticAnalysis(Path classesDirectory) {
+        this.classesDirectory = classesDirectory;
+    }
+
+    /**
+     * @param fullyQualifiedName The class, with nested classes separated by '$'.
+     * @return The signatures, as produced by {@link #signature(JavaType.Method)}, of the methods that can be made
+     * static, or null if there is no class file for the class.
+     */
+    @Nullable
+    public Set<String> staticEligible(String fullyQualifiedName) {
+        return eligibleByClass.computeIfAbsent(fullyQualifiedName, fqn -> {
+            Path classFile = classesDirectory.resolve(fqn.replace('.', '/') + ".class");
+            if (!Files.isRegularFile(classFile)) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(staticEligible(Files.readAllBytes(classFile)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).orElse(null);
+    }
+
+    static Set<String> staticEligible(byte[] classFile) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classFile).accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        Map<String, Set<String>> calleesByCandidate = new HashMap<>();
+        for (MethodNode method : classNode.methods) {
+            boolean candidate = (method.access & CANDIDATE_ACCESS) != 0 && (method.access & EXCLUDED_ACCESS) == 0 &&
+                                !"<init>".equals(method.name);
+            if (!candidate && !isLambdaBody(method)) {
+                continue;
+            }
+            ThisUsage usage = new ThisUsage(classNode.name);
+            try {
+                new Analyzer<>(usage).analyze(classNode.name, method);
+            } catch (AnalyzerException e) {
+                continue;
+            }
+            if (!usage.escapes) {
+                calleesByCandidate.put(method.name + method.desc, usage.callees);
+            }
+        }
+
+        // least fixed point, so that methods calling each other in a cycle stay as they are
+        Set<String> eligible = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Set<String>> candidate : calleesByCandidate.entrySet()) {
+                if (!eligible.contains(candidate.getKey()) && eligible.containsAll(candidate.getValue())) {
+                    eligible.add(candidate.getKey());
+                    changed = true;
+                }
+            }
+        }
+
+        Set<String> signatures = new HashSet<>();
+        for (String nameAndDescriptor : eligible) {
+            if (isLambdaBody(nameAndDescriptor)) {
+                continue;
+            }
+            int descriptorStart = nameAndDescriptor.indexOf('(');
+            StringBuilder signature = new StringBuilder(nameAndDescriptor.substring(0, descriptorStart)).append('(');
+            Type[] arguments = Type.getArgumentTypes(nameAndDescriptor.substring(descriptorStart));
+            for (int i = 0; i < arguments.length; i++) {
+                if (i > 0) {
+                    signature.append(',');
+                }
+                signature.append(arguments[i].getClassName());
+            }
+            signatures.add(signature.append(')').toString());
+        }
+        return signatures;
+    }
+
+    private static boolean isLambdaBody(MethodNode method) {
+        return (method.access & Opcodes.ACC_STATIC) == 0 && (method.access & Opcodes.ACC_PRIVATE) != 0 &&
+               isLambdaBody(method.name);
+    }
+
+    private static boolean isLambdaBody(String methodName) {
+        return methodName.startsWith("lambda$");
+    }
+
+    /**
+     * @return The method name followed by the erasure of its parameter types, e.g. {@code foo(int,java.lang.String[])}.
+     */
+    public static String signature(JavaType.Method method) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        List<JavaType> parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                signature.append(',');
+            }
+            signature.append(erasure(parameterTypes.get(i)));
+        }
+        return signature.append(')').toString();
+    }
+
+    private static String erasure(@Nullable JavaType type) {
+        if (type instanceof JavaType.Primitive) {
+            return ((JavaType.Primitive) type).getKeyword();
+        } else if (type instanceof JavaType.Array) {
+            return erasure(((JavaType.Array) type).getElemType()) + "[]";
+        } else if (type instanceof JavaType.GenericTypeVariable) {
+            List<JavaType> bounds = ((JavaType.GenericTypeVariable) type).getBounds();
+            return bounds.isEmpty() ? "java.lang.Object" : erasure(bounds.get(0));
+        } else if (type instanceof JavaType.FullyQualified) {
+            return ((JavaType.FullyQualified) type).getFullyQualifiedName();
+        }
+        return "?";
+    }
+
+    /**
+     * Tracks every consumer of a value loaded from local slot 0 while the {@link Analyzer} runs.
+     */
+    private static class ThisUsage extends SourceInterpreter {
+        private final String owner;
+        private final Set<String> callees = new HashSet<>();
+        private boolean escapes;
+
+        ThisUsage(String owner) {
+            super(Opcodes.ASM9);
+            this.owner = owner;
+        }
+
+        @Override
+        public SourceValue copyOperation(AbstractInsnNode insn, SourceValue value) {
+            int opcode = insn.getOpcode();
+            if (isThis(value)) {
+                if (opcode >= Opcodes.DUP && opcode <= Opcodes.SWAP) {
+                    // keep duplicates recognizable as 'this'
+                    return value;
+                } else if (opcode == Opcodes.ASTORE) {
+                    escapes = true;
+                }
+            }
+            return super.copyOperation(insn, value);
+        }
+
+        @Override
+        public SourceValue unaryOperation(AbstractInsnNode insn, SourceValue value) {
+            escapes |= isThis(value);
+            return super.unaryOperation(insn, value);
+        }
+
+        @Override
+        public SourceValue binaryOperation(AbstractInsnNode insn, SourceValue value1, SourceValue value2) {
+            escapes |= isThis(value1) || isThis(value2);
+            return super.binaryOperation(insn, value1, value2);
+        }
+
+        @Override
+        public SourceValue ternaryOperation(AbstractInsnNode insn, SourceValue value1, SourceValue value2, SourceValue value3) {
+            escapes |= isThis(value1) || isThis(value2) || isThis(value3);
+            return super.ternaryOperation(insn, value1, value2, value3);
+        }
+
+        @Override
+        public SourceValue naryOperation(AbstractInsnNode insn, List<? extends SourceValue> values) {
+            int firstArgument = 0;
+            if (insn instanceof MethodInsnNode && insn.getOpcode() != Opcodes.INVOKESTATIC && !values.isEmpty() &&
+                isThis(values.get(0))) {
+                MethodInsnNode call = (MethodInsnNode) insn;
+                if (owner.equals(call.owner) && !"<init>".equals(call.name)) {
+                    callees.add(call.name + call.desc);
+                } else {
+                    escapes = true;
+                }
+                firstArgument = 1;
+            } else if (insn instanceof InvokeDynamicInsnNode && !values.isEmpty() && isThis(values.get(0))) {
+                Handle lambdaBody = lambdaBody((InvokeDynamicInsnNode) insn);
+                if (lambdaBody != null) {
+                    callees.add(lambdaBody.getName() + lambdaBody.getDesc());
+                    firstArgument = 1;
+                }
+            }
+            for (int i = firstArgument; i < values.size(); i++) {
+                escapes |= isThis(values.get(i));
+            }
+            return super.naryOperation(insn, values);
+        }
+
+        @Override
+        public void returnOperation(AbstractInsnNode insn, SourceValue value, SourceValue expected) {
+            escapes |= isThis(value);
+            super.returnOperation(insn, value, expected);
+        }
+
+        /**
+         * @return The lambda body method of this class a lambda is created for, or null for anything else, such as a
+         * method reference.
+         */
+        @Nullable
+        private Handle lambdaBody(InvokeDynamicInsnNode indy) {
+            if (!LAMBDA_METAFACTORY.equals(indy.bsm.getOwner()) || indy.bsmArgs.length < 2 ||
+                !(indy.bsmArgs[1] instanceof Handle)) {
+                return null;
+            }
+            Handle implementation = (Handle) indy.bsmArgs[1];
+            boolean instanceMethod = implementation.getTag() == Opcodes.H_INVOKESPECIAL ||
+                                     implementation.getTag() == Opcodes.H_INVOKEVIRTUAL;
+            return instanceMethod && owner.equals(implementation.getOwner()) && isLambdaBody(implementation.getName()) ?
+                    implementation : null;
+        }
+
+        private static boolean isThis(SourceValue value) {
+            for (AbstractInsnNode source : value.insns) {
+                if (source.getOpcode() == Opcodes.ALOAD && ((VarInsnNode) source).var == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
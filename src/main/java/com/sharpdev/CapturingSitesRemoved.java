@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreType;
+import lombok.Value;
+import org.openrewrite.Column;
+import org.openrewrite.DataTable;
+import org.openrewrite.Recipe;
+
+/**
+ * The lambdas, method references and anonymous classes that captured {@code this} only to call methods that
+ * {@link MakePrivateOrFinalMethodsStatic} made static. They no longer capture it, so that the JVM can reuse a single
+ * instance of a lambda or method reference instead of allocating one every time it is evaluated.
+ */
+@JsonIgnoreType
+public class CapturingSitesRemoved extends DataTable<CapturingSitesRemoved.Row> {
+
+    public CapturingSitesRemoved(Recipe recipe) {
+        super(recipe, "Capturing sites removed",
+                "Lambdas, method references and anonymous classes that no longer capture `this`.");
+    }
+
+    @Value
+    public static class Row {
+        @Column(displayName = "Source path",
+                description = "The source file the site is in.")
+        String sourcePath;
+
+        @Column(displayName = "Kind",
+                description = "Lambda, method reference or anonymous class.")
+        String kind;
+
+        @Column(displayName = "Enclosing method",
+                description = "The method the site is in, empty for a field initializer.")
+        String enclosingMethod;
+    }
+}
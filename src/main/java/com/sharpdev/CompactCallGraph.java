@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import java.util.*;
+
+/**
+ * The calls between the methods of a source file, for deciding which methods can be made static.
+ * <p>
+ * Methods are interned to dense int ids and the callers of every method are kept in compressed sparse row form, i.e.
+ * one array of callers and one array of offsets into it indexed by callee, so that a class with tens of thousands of
+ * methods needs a few int arrays and {@link BitSet}s rather than a boxed set per method.
+ */
+final class CompactCallGraph {
+
+    private final String[] keys;
+    private final BitSet candidates;
+
+    /**
+     * The callers of method {@code m} are {@code callers[callerOffsets[m]]} to {@code callers[callerOffsets[m + 1] - 1]}.
+     */
+    private final int[] callerOffsets;
+    private final int[] callers;
+
+    /**
+     * The number of distinct methods every method calls.
+     */
+    private final int[] calleeCounts;
+
+    private CompactCallGraph(String[] keys, BitSet candidates, int[] callerOffsets, int[] callers, int[] calleeCounts) {
+        this.keys = keys;
+        this.candidates = candidates;
+        this.callerOffsets = callerOffsets;
+        this.callers = callers;
+        this.calleeCounts = calleeCounts;
+    }
+
+    String key(int method) {
+        return keys[method];
+    }
+
+    /**
+     * @return The candidates that only call candidates that can be made static themselves. Methods calling each other
+     * in a cycle are left as they are.
+     */
+    BitSet solve() {
+        int[] pendingCallees = calleeCounts.clone();
+        BitSet blocked = new BitSet(keys.length);
+        for (int method = 0; method < keys.length; method++) {
+            if (!candidates.get(method)) {
+                // an instance method that never becomes static blocks every caller
+                for (int i = callerOffsets[method]; i < callerOffsets[method + 1]; i++) {
+                    blocked.set(callers[i]);
+                }
+            }
+        }
+
+        int[] ready = new int[keys.length];
+        int readyCount = 0;
+        for (int method = candidates.nextSetBit(0); method >= 0; method = candidates.nextSetBit(method + 1)) {
+            if (pendingCallees[method] == 0 && !blocked.get(method)) {
+                ready[readyCount++] = method;
+            }
+        }
+
+        BitSet eligible = new BitSet(keys.length);
+        while (readyCount > 0) {
+            int method = ready[--readyCount];
+            eligible.set(method);
+            for (int i = callerOffsets[method]; i < callerOffsets[method + 1]; i++) {
+                int caller = callers[i];
+                if (--pendingCallees[caller] == 0 && candidates.get(caller) && !blocked.get(caller)) {
+                    ready[readyCount++] = caller;
+                }
+            }
+        }
+        return eligible;
+    }
+
+    static class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private final BitSet candidates = new BitSet();
+
+        /**
+         * Calls packed as {@code caller << 32 | callee}.
+         */
+        private long[] calls = new long[16];
+        private int callCount;
+
+        /**
+         * @return The id of the method, interning it on first use.
+         */
+        int method(String key) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = keys.size();
+                ids.put(key, id);
+                keys.add(key);
+            }
+            return id;
+        }
+
+        /**
+         * Marks a method as one that can be made static once every method it calls is.
+         */
+        void candidate(int method) {
+            candidates.set(method);
+        }
+
+        void call(int caller, int callee) {
+            if (callCount == calls.length) {
+                calls = Arrays.copyOf(calls, callCount * 2);
+            }
+            calls[callCount++] = (long) caller << 32 | callee;
+        }
+
+        CompactCallGraph build() {
+            int size = keys.size();
+
+            // sorting makes repeated calls adjacent, and orders them by caller
+            long[] sorted = Arrays.copyOf(calls, callCount);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+
+            int[] calleeCounts = new int[size];
+            int[] callerOffsets = new int[size + 1];
+            for (int i = 0; i < distinct; i++) {
+                calleeCounts[(int) (sorted[i] >>> 32)]++;
+                callerOffsets[(int) sorted[i] + 1]++;
+            }
+            for (int method = 0; method < size; method++) {
+                callerOffsets[method + 1] += callerOffsets[method];
+            }
+            int[] callers = new int[distinct];
+            int[] next = Arrays.copyOf(callerOffsets, size);
+            for (int i = 0; i < distinct; i++) {
+                callers[next[(int) sorted[i]]++] = (int) (sorted[i] >>> 32);
+            }
+
+            return new CompactCallGraph(keys.toArray(new String[0]), (BitSet) candidates.clone(), callerOffsets,
+                    callers, calleeCounts);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openrewrite.internal.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs tasks on a fixed number of threads so that one expensive task picked up last doesn't leave every other thread
+ * idle while it finishes.
+ * <p>
+ * Tasks are ordered by estimated cost, most expensive first, and dealt to the worker with the least estimated work so
+ * far, as {@link SourceFileShards} does for processes. Each worker then takes its own tasks from the expensive end
+ * of its queue, and once it runs out, steals from the cheap end of the queues of the others, which makes up for
+ * estimates that turn out wrong.
+ */
+public final class CostAwareScheduler {
+
+    private CostAwareScheduler() {
+    }
+
+    /**
+     * @param tasks   The tasks to run.
+     * @param cost    The estimated cost of a task, in any unit as long as it is the same for every task.
+     * @param threads The number of threads to run them on.
+     * @param work    Runs a task. The first exception it throws is rethrown once every worker has stopped.
+     */
+    public static <T> void run(List<T> tasks, ToLongFunction<T> cost, int threads, Consumer<T> work) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+
+        List<ConcurrentLinkedDeque<T>> queues = assign(tasks, cost, threads);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    T task;
+                    while (failure.get() == null && (task = next(queues, worker)) != null) {
+                        work.accept(task);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "recipe-worker-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + worker.getName(), e);
+            }
+        }
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * @return For every worker, its tasks with the most expensive first.
+     */
+    static <T> List<ConcurrentLinkedDeque<T>> assign(List<T> tasks, ToLongFunction<T> cost, int threads) {
+        List<T> ordered = new ArrayList<>(tasks);
+        ordered.sort(Comparator.comparingLong(cost).reversed());
+
+        long[] load = new long[threads];
+        List<ConcurrentLinkedDeque<T>> queues = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            queues.add(new ConcurrentLinkedDeque<>());
+        }
+        for (T task : ordered) {
+            int target = 0;
+            for (int i = 1; i < threads; i++) {
+                if (load[i] < load[target]) {
+                    target = i;
+                }
+            }
+            queues.get(target).addLast(task);
+            load[target] += Math.max(1, cost.applyAsLong(task));
+        }
+        return queues;
+    }
+
+    /**
+     * @return The next task of the worker, stolen from another worker if it has none left, or null when every queue
+     * is empty.
+     */
+    @Nullable
+    private static <T> T next(List<ConcurrentLinkedDeque<T>> queues, int worker) {
+        T task = queues.get(worker).pollFirst();
+        for (int i = 1; task == null && i < queues.size(); i++) {
+            task = queues.get((worker + i) % queues.size()).pollLast();
+        }
+        return task;
+    }
+}
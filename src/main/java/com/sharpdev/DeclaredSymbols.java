@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.Statement;
+
+import java.util.*;
+
+/**
+ * The fields and methods a class declares, read from its declarations alone so that no type attribution is needed.
+ * <p>
+ * Names that the class may see but does not declare itself (inherited members, members of an enclosing instance)
+ * cannot be resolved from declarations. Whether such names can exist at all is captured by {@link #isOpen()}. The
+ * instance methods every class inherits from {@code Object} and the accessors of record components are known
+ * without declarations.
+ */
+final class DeclaredSymbols {
+
+    private static final String CONVERTED_KEY_PREFIX = DeclaredSymbols.class.getName() + ".converted.";
+
+    private final Set<String> instanceFields = new HashSet<>();
+    private final Set<String> staticFields = new HashSet<>();
+    private final Map<String, List<J.MethodDeclaration>> methods = new HashMap<>();
+    private final Set<String> accessors = new HashSet<>();
+    private final Set<String> innerClasses = new HashSet<>();
+    private final boolean open;
+
+    private DeclaredSymbols(boolean open) {
+        this.open = open;
+    }
+
+    /**
+     * @param classDecl     The class whose declarations are collected.
+     * @param innerClass    Whether the class is nested in another class without being static, so that members of the
+     *                      enclosing instance are in scope.
+     */
+    static DeclaredSymbols of(J.ClassDeclaration classDecl, boolean innerClass) {
+        // only a plain class that neither extends nor implements anything sees no members besides those of Object;
+        // enums inherit those of Enum, and interfaces, records and implementing classes may inherit default methods
+        boolean plainClass = classDecl.getKind() == J.ClassDeclaration.Kind.Type.Class &&
+                             classDecl.getExtends() == null &&
+                             (classDecl.getImplements() == null || classDecl.getImplements().isEmpty());
+        DeclaredSymbols symbols = new DeclaredSymbols(innerClass || !plainClass);
+        if (classDecl.getKind() == J.ClassDeclaration.Kind.Type.Record && classDecl.getPrimaryConstructor() != null) {
+            for (Statement component : classDecl.getPrimaryConstructor()) {
+                if (component instanceof J.VariableDeclarations) {
+                    for (J.VariableDeclarations.NamedVariable variable : ((J.VariableDeclarations) component).getVariables()) {
+                        symbols.instanceFields.add(variable.getSimpleName());
+                        symbols.accessors.add(variable.getSimpleName());
+                    }
+                }
+            }
+        }
+        boolean allFieldsStatic = classDecl.getKind() == J.ClassDeclaration.Kind.Type.Interface ||
+                                  classDecl.getKind() == J.ClassDeclaration.Kind.Type.Annotation;
+        for (Statement statement : classDecl.getBody().getStatements()) {
+            if (statement instanceof J.VariableDeclarations) {
+                J.VariableDeclarations field = (J.VariableDeclarations) statement;
+                Set<String> target = allFieldsStatic || field.hasModifier(J.Modifier.Type.Static) ?
+                        symbols.staticFields : symbols.instanceFields;
+                for (J.VariableDeclarations.NamedVariable variable : field.getVariables()) {
+                    target.add(variable.getSimpleName());
+                }
+            } else if (statement instanceof J.MethodDeclaration) {
+                J.MethodDeclaration method = (J.MethodDeclaration) statement;
+                if (!method.isConstructor()) {
+                    symbols.methods.computeIfAbsent(method.getSimpleName(), n -> new ArrayList<>()).add(method);
+                }
+            }
+        }
+        symbols.addInnerClasses(classDecl);
+        return symbols;
+    }
+
+    /**
+     * Adds the inner classes declared by a class, which are created with the instance as their enclosing instance by
+     * {@code new Inner()} within it or within the classes nested in it.
+     */
+    void addInnerClasses(J.ClassDeclaration classDecl) {
+        for (Statement statement : classDecl.getBody().getStatements()) {
+            if (statement instanceof J.ClassDeclaration) {
+                J.ClassDeclaration nested = (J.ClassDeclaration) statement;
+                if (nested.getKind() == J.ClassDeclaration.Kind.Type.Class && !nested.hasModifier(J.Modifier.Type.Static) &&
+                    classDecl.getKind() != J.ClassDeclaration.Kind.Type.Interface &&
+                    classDecl.getKind() != J.ClassDeclaration.Kind.Type.Annotation) {
+                    innerClasses.add(nested.getSimpleName());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the class can see members it does not declare, because it is an inner class, or is anything
+     * but a class that neither extends nor implements another type.
+     */
+    boolean isOpen() {
+        return open;
+    }
+
+    boolean isInstanceField(String name) {
+        return instanceFields.contains(name);
+    }
+
+    boolean isStaticField(String name) {
+        return staticFields.contains(name);
+    }
+
+    /**
+     * @return true if {@code name} is the simple name of an inner class of the class or of a class around it.
+     */
+    boolean isInnerClass(String name) {
+        return innerClasses.contains(name);
+    }
+
+    /**
+     * @return true if {@code name} is the accessor of a record component.
+     */
+    boolean isAccessor(String name) {
+        return accessors.contains(name);
+    }
+
+    /**
+     * @return The declared methods named {@code name} that accept {@code arity} arguments.
+     */
+    List<J.MethodDeclaration> methods(String name, int arity) {
+        List<J.MethodDeclaration> overloads = methods.get(name);
+        if (overloads == null) {
+            return Collections.emptyList();
+        }
+        List<J.MethodDeclaration> applicable = new ArrayList<>(overloads.size());
+        for (J.MethodDeclaration method : overloads) {
+            int parameters = parameterCount(method);
+            boolean varargs = parameters > 0 && isVarargs(method.getParameters().get(parameters - 1));
+            if (parameters == arity || (varargs && arity >= parameters - 1)) {
+                applicable.add(method);
+            }
+        }
+        return applicable;
+    }
+
+    static int parameterCount(J.MethodDeclaration method) {
+        int count = 0;
+        for (Statement parameter : method.getParameters()) {
+            if (!(parameter instanceof J.Empty)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isVarargs(Statement parameter) {
+        return parameter instanceof J.VariableDeclarations && ((J.VariableDeclarations) parameter).getVarargs() != null;
+    }
+
+    /**
+     * @return true if the method is declared static or has been made static earlier in this run.
+     */
+    static boolean isStatic(J.MethodDeclaration method, ExecutionContext ctx) {
+        return method.hasModifier(J.Modifier.Type.Static) || ctx.getMessage(convertedKey(method)) != null;
+    }
+
+    static void markConverted(J.MethodDeclaration method, ExecutionContext ctx) {
+        ctx.putMessage(convertedKey(method), true);
+    }
+
+    private static String convertedKey(J.MethodDeclaration method) {
+        return CONVERTED_KEY_PREFIX + method.getId();
+    }
+}
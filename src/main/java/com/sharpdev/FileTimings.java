@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How long processing every source file took in an earlier run, used as the estimated cost of processing it again.
+ * Files without a timing are estimated from their size, at the average time per byte of the files that have one.
+ */
+public class FileTimings {
+
+    private final Map<String, Long> nanosByPath = new ConcurrentHashMap<>();
+
+    /**
+     * @return The timings written to {@code file} by an earlier run, or none if there is no such file.
+     */
+    public static FileTimings read(Path file) throws IOException {
+        FileTimings timings = new FileTimings();
+        if (Files.isRegularFile(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    timings.nanosByPath.put(line.substring(tab + 1), Long.parseLong(line.substring(0, tab)));
+                }
+            }
+        }
+        return timings;
+    }
+
+    public void write(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> timing : new TreeMap<>(nanosByPath).entrySet()) {
+                out.write(timing.getValue() + "\t" + timing.getKey());
+                out.newLine();
+            }
+        }
+    }
+
+    public void record(Path source, long nanos) {
+        nanosByPath.put(SourceFileCost.normalize(source), nanos);
+    }
+
+    /**
+     * @param root    The root of the source tree.
+     * @param sources The source files, relative to {@code root}.
+     * @return The source files with their estimated cost in nanoseconds, or in bytes when no file has a timing.
+     */
+    public List<SourceFileCost> costs(Path root, List<Path> sources) {
+        List<SourceFileCost> files = new ArrayList<>(sources.size());
+        long timedNanos = 0;
+        long timedBytes = 0;
+        for (Path source : sources) {
+            long size;
+            try {
+                size = Files.size(root.resolve(source));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Long nanos = nanosByPath.get(SourceFileCost.normalize(source));
+            if (nanos != null) {
+                timedNanos += nanos;
+                timedBytes += size;
+            }
+            files.add(new SourceFileCost(source, size, nanos == null ? -1 : nanos));
+        }
+
+        double nanosPerByte = timedBytes == 0 ? 1 : (double) timedNanos / timedBytes;
+        for (ListIterator<SourceFileCost> it = files.listIterator(); it.hasNext(); ) {
+            SourceFileCost file = it.next();
+            if (file.getCost() < 0) {
+                it.set(new SourceFileCost(file.getPath(), file.getSize(), (long) (file.getSize() * nanosPerByte)));
+            }
+        }
+        return files;
+    }
+}
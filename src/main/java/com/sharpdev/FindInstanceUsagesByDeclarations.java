@@ -0,0 +1,295 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.internal.lang.Nullable;
+import org.openrewrite.java.JavaIsoVisitor;
+import org.openrewrite.java.tree.Expression;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.TypeTree;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds instance access within a method by resolving names against the {@link DeclaredSymbols} of its class and the
+ * local variables in scope, without relying on type attribution.
+ * <p>
+ * Whenever a name or call could refer to more than one thing, the result is {@link InstanceAccess#AMBIGUOUS} so the
+ * method can be left as it is.
+ */
+final class FindInstanceUsagesByDeclarations extends JavaIsoVisitor<AtomicReference<FindInstanceUsagesByDeclarations.InstanceAccess>> {
+
+    /**
+     * Ordered by precedence: once instance access has been found, the method can't be made static regardless of
+     * what else is ambiguous.
+     */
+    enum InstanceAccess {
+        NONE,
+        AMBIGUOUS,
+        INSTANCE
+    }
+
+    /**
+     * The instance methods of {@code Object}, which every class inherits.
+     */
+    private static final Set<String> OBJECT_METHODS = new HashSet<>(Arrays.asList(
+            "toString", "hashCode", "getClass", "equals", "wait", "notify", "notifyAll", "clone", "finalize"));
+
+    private final DeclaredSymbols symbols;
+    private final ExecutionContext ctx;
+    private final Deque<Set<String>> scopes = new ArrayDeque<>();
+
+    private FindInstanceUsagesByDeclarations(DeclaredSymbols symbols, ExecutionContext ctx) {
+        this.symbols = symbols;
+        this.ctx = ctx;
+    }
+
+    /**
+     * @param method  The method to search.
+     * @param symbols The declarations of the class the method belongs to.
+     * @return Whether the method accesses the instance, or whether that can't be decided from declarations.
+     */
+    static InstanceAccess find(J.MethodDeclaration method, DeclaredSymbols symbols, ExecutionContext ctx) {
+        return new FindInstanceUsagesByDeclarations(symbols, ctx)
+                .reduce(method, new AtomicReference<>(InstanceAccess.NONE))
+                .get();
+    }
+
+    private static void report(AtomicReference<InstanceAccess> access, InstanceAccess found) {
+        if (found.compareTo(access.get()) > 0) {
+            access.set(found);
+        }
+    }
+
+    @Override
+    public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, AtomicReference<InstanceAccess> access) {
+        scopes.push(new HashSet<>());
+        J.MethodDeclaration m = super.visitMethodDeclaration(method, access);
+        scopes.pop();
+        return m;
+    }
+
+    @Override
+    public J.Block visitBlock(J.Block block, AtomicReference<InstanceAccess> access) {
+        scopes.push(new HashSet<>());
+        J.Block b = super.visitBlock(block, access);
+        scopes.pop();
+        return b;
+    }
+
+    @Override
+    public J.Lambda visitLambda(J.Lambda lambda, AtomicReference<InstanceAccess> access) {
+        scopes.push(new HashSet<>());
+        J.Lambda l = super.visitLambda(lambda, access);
+        scopes.pop();
+        return l;
+    }
+
+    @Override
+    public J.ForLoop visitForLoop(J.ForLoop forLoop, AtomicReference<InstanceAccess> access) {
+        scopes.push(new HashSet<>());
+        J.ForLoop f = super.visitForLoop(forLoop, access);
+        scopes.pop();
+        return f;
+    }
+
+    @Override
+    public J.ForEachLoop visitForEachLoop(J.ForEachLoop forLoop, AtomicReference<InstanceAccess> access) {
+        scopes.push(new HashSet<>());
+        J.ForEachLoop f = super.visitForEachLoop(forLoop, access);
+        scopes.pop();
+        return f;
+    }
+
+    @Override
+    public J.Try visitTry(J.Try tryable, AtomicReference<InstanceAccess> access) {
+        scopes.push(new HashSet<>());
+        J.Try t = super.visitTry(tryable, access);
+        scopes.pop();
+        return t;
+    }
+
+    @Override
+    public J.Try.Catch visitCatch(J.Try.Catch _catch, AtomicReference<InstanceAccess> access) {
+        scopes.push(new HashSet<>());
+        J.Try.Catch c = super.visitCatch(_catch, access);
+        scopes.pop();
+        return c;
+    }
+
+    @Override
+    public J.VariableDeclarations visitVariableDeclarations(J.VariableDeclarations multiVariable, AtomicReference<InstanceAccess> access) {
+        J.VariableDeclarations mv = super.visitVariableDeclarations(multiVariable, access);
+        // declared after visiting, so an initializer referring to the same name still sees what it shadows
+        for (J.VariableDeclarations.NamedVariable variable : mv.getVariables()) {
+            scopes.element().add(variable.getSimpleName());
+        }
+        return mv;
+    }
+
+    @Override
+    public J.ClassDeclaration visitClassDeclaration(J.ClassDeclaration classDecl, AtomicReference<InstanceAccess> access) {
+        // names inside a local class resolve against its own members first, which aren't tracked here
+        report(access, InstanceAccess.AMBIGUOUS);
+        return classDecl;
+    }
+
+    @Override
+    public J.NewClass visitNewClass(J.NewClass newClass, AtomicReference<InstanceAccess> access) {
+        String created = simpleName(newClass.getClazz());
+        if (newClass.getEnclosing() == null && created != null && symbols.isInnerClass(created)) {
+            // the instance becomes the enclosing instance of the inner class
+            report(access, InstanceAccess.INSTANCE);
+        }
+        if (newClass.getBody() != null) {
+            report(access, InstanceAccess.AMBIGUOUS);
+            return newClass;
+        }
+        return super.visitNewClass(newClass, access);
+    }
+
+    @Override
+    public J.FieldAccess visitFieldAccess(J.FieldAccess fieldAccess, AtomicReference<InstanceAccess> access) {
+        String name = fieldAccess.getSimpleName();
+        if ("this".equals(name) || "super".equals(name)) {
+            // Outer.this or Outer.super
+            report(access, InstanceAccess.INSTANCE);
+        }
+        return super.visitFieldAccess(fieldAccess, access);
+    }
+
+    @Override
+    public J.MethodInvocation visitMethodInvocation(J.MethodInvocation method, AtomicReference<InstanceAccess> access) {
+        // this.run() is left to the 'this' it selects from, since nothing rewrites it to run() in a static method
+        if (method.getSelect() == null) {
+            report(access, resolveCall(method.getSimpleName(), argumentCount(method)));
+        }
+        return super.visitMethodInvocation(method, access);
+    }
+
+    @Override
+    public J.Identifier visitIdentifier(J.Identifier identifier, AtomicReference<InstanceAccess> access) {
+        J.Identifier i = super.visitIdentifier(identifier, access);
+
+        Object parent = getCursor().dropParentUntil(J.class::isInstance).getValue();
+        if (!isReference(identifier, parent)) {
+            return i;
+        }
+
+        String name = i.getSimpleName();
+        if ("this".equals(name) || "super".equals(name)) {
+            report(access, InstanceAccess.INSTANCE);
+        } else if (isLocal(name) || symbols.isStaticField(name)) {
+            return i;
+        } else if (symbols.isInstanceField(name)) {
+            report(access, InstanceAccess.INSTANCE);
+        } else if (!Character.isUpperCase(name.charAt(0)) && symbols.isOpen()) {
+            // possibly an inherited field or one of the enclosing instance; capitalized names are taken to be types
+            // or constants
+            report(access, InstanceAccess.AMBIGUOUS);
+        }
+        return i;
+    }
+
+    private InstanceAccess resolveCall(String name, int arity) {
+        List<J.MethodDeclaration> candidates = symbols.methods(name, arity);
+        if (candidates.isEmpty()) {
+            if (OBJECT_METHODS.contains(name) || (arity == 0 && symbols.isAccessor(name))) {
+                return InstanceAccess.INSTANCE;
+            }
+            return symbols.isOpen() ? InstanceAccess.AMBIGUOUS : InstanceAccess.NONE;
+        }
+
+        boolean anyStatic = false;
+        boolean anyInstance = false;
+        for (J.MethodDeclaration candidate : candidates) {
+            if (DeclaredSymbols.isStatic(candidate, ctx)) {
+                anyStatic = true;
+            } else {
+                anyInstance = true;
+            }
+        }
+        if (anyStatic && anyInstance) {
+            // overloads of the same arity can only be told apart by argument types
+            return InstanceAccess.AMBIGUOUS;
+        }
+        return anyInstance ? InstanceAccess.INSTANCE : InstanceAccess.NONE;
+    }
+
+    private boolean isLocal(String name) {
+        for (Set<String> scope : scopes) {
+            if (scope.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int argumentCount(J.MethodInvocation method) {
+        int count = 0;
+        for (Expression argument : method.getArguments()) {
+            if (!(argument instanceof J.Empty)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Nullable
+    private static String simpleName(@Nullable TypeTree clazz) {
+        Object name = clazz instanceof J.ParameterizedType ? ((J.ParameterizedType) clazz).getClazz() : clazz;
+        if (name instanceof J.Identifier) {
+            return ((J.Identifier) name).getSimpleName();
+        } else if (name instanceof J.FieldAccess) {
+            return ((J.FieldAccess) name).getSimpleName();
+        }
+        return null;
+    }
+
+    /**
+     * @return false for identifiers that name a declaration, a member selected from some other expression, a type or
+     * a label, rather than referring to a variable.
+     */
+    private static boolean isReference(J.Identifier identifier, Object parent) {
+        if (parent instanceof J.FieldAccess) {
+            return ((J.FieldAccess) parent).getName() != identifier;
+        } else if (parent instanceof J.MethodInvocation) {
+            return ((J.MethodInvocation) parent).getName() != identifier;
+        } else if (parent instanceof J.MemberReference) {
+            return ((J.MemberReference) parent).getReference() != identifier;
+        } else if (parent instanceof J.VariableDeclarations.NamedVariable) {
+            return ((J.VariableDeclarations.NamedVariable) parent).getName() != identifier;
+        } else if (parent instanceof J.NewClass) {
+            return ((J.NewClass) parent).getClazz() != identifier;
+        } else if (parent instanceof J.NewArray) {
+            return ((J.NewArray) parent).getTypeExpression() != identifier;
+        } else if (parent instanceof J.InstanceOf) {
+            return ((J.InstanceOf) parent).getClazz() != identifier;
+        }
+        return !(parent instanceof J.VariableDeclarations ||
+                 parent instanceof J.MethodDeclaration ||
+                 parent instanceof J.ClassDeclaration ||
+                 parent instanceof J.ParameterizedType ||
+                 parent instanceof J.ArrayType ||
+                 parent instanceof J.Annotation ||
+                 parent instanceof J.TypeParameter ||
+                 parent instanceof J.Label ||
+                 parent instanceof J.Break ||
+                 parent instanceof J.Continue);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import lombok.Value;
+import lombok.With;
+import org.openrewrite.marker.Marker;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Whether a method uses its instance, found while javac attributed its body, so that the recipe can tell without
+ * walking the body again.
+ *
+ * @see InstanceAccessMarkers
+ */
+@Value
+@With
+public class InstanceAccessMarker implements Marker {
+    UUID id;
+
+    /**
+     * Uses the instance other than by calling instance methods of its own class.
+     */
+    boolean accessesInstanceDirectly;
+
+    /**
+     * The instance methods of its own class it calls on the instance, by
+     * {@link InstanceAccessMarkers#key(String, String)}.
+     */
+    Set<String> callees;
+
+    /**
+     * Declares a local or anonymous class in its body, whose methods are only found by walking the body.
+     */
+    boolean declaresClasses;
+}
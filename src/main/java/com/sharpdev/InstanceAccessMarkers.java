@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openrewrite.Tree;
+import org.openrewrite.internal.lang.Nullable;
+import org.openrewrite.java.JavaIsoVisitor;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.JavaType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Attaches the instance access of methods found by the {@code InstanceAccess} javac plugin to their declarations as
+ * {@link InstanceAccessMarker}s.
+ * <p>
+ * rewrite's parser doesn't let anything listen in on the javac task it attributes sources with, so the plugin takes
+ * part in compiling the project instead: {@code javac -Xplugin:"InstanceAccess build/instance-access" ...}. It
+ * writes a file for every top-level class to the directory it is given. Its first line is the
+ * {@link #sourceHash(CharSequence) hash} of the source file the class was compiled from, and every other line
+ * describes a method with a body: its key, whether it accesses the instance directly, the keys of the methods of its
+ * own class it calls and whether it declares classes, separated by tabs. A file written from a source other than
+ * the one parsed is ignored, so that a stale file can't make the recipe change a method that uses its instance.
+ */
+public final class InstanceAccessMarkers {
+
+    private static final String EXTENSION = ".instance-access";
+
+    private InstanceAccessMarkers() {
+    }
+
+    /**
+     * @param declaringClass The binary name of the class declaring the method, e.g. {@code p.A$Inner}.
+     * @param signature      The method signature, as in {@link BytecodeStaticAnalysis#signature(JavaType.Method)}.
+     * @return The key of the method, the same when javac and the LST describe it.
+     */
+    public static String key(String declaringClass, String signature) {
+        return declaringClass + '#' + signature;
+    }
+
+    @Nullable
+    static String key(JavaType.Method method) {
+        JavaType.FullyQualified declaringType = method.getDeclaringType();
+        return declaringType == null ? null : key(declaringType.getFullyQualifiedName(), BytecodeStaticAnalysis.signature(method));
+    }
+
+    /**
+     * @return The file describing the methods of a top-level class and the classes nested in it.
+     */
+    public static Path file(Path directory, String topLevelClass) {
+        return directory.resolve(topLevelClass.replace('.', File.separatorChar) + EXTENSION);
+    }
+
+    /**
+     * @return The hash of the text of a source file, as the first line of the file of each of its top-level classes.
+     */
+    public static String sourceHash(CharSequence source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest(source.toString().getBytes(StandardCharsets.UTF_8))) {
+            hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * @return The line describing a method in its file.
+     */
+    public static String line(String key, boolean accessesInstanceDirectly, Collection<String> callees,
+                              boolean declaresClasses) {
+        return key + '\t' + accessesInstanceDirectly + '\t' + String.join(";", callees) + '\t' + declaresClasses;
+    }
+
+    /**
+     * @param directory The directory the plugin wrote to.
+     * @return The source file with a marker on every method of its classes and their member classes that the plugin
+     * described. Method bodies aren't walked, so methods of local and anonymous classes are left without one. Files
+     * written from another version of the source file are ignored.
+     */
+    public static J.CompilationUnit attach(Path directory, J.CompilationUnit cu) {
+        Map<String, InstanceAccessMarker> markers = new HashMap<>();
+        String sourceHash = null;
+        for (J.ClassDeclaration classDecl : cu.getClasses()) {
+            if (classDecl.getType() == null) {
+                continue;
+            }
+            Path file = file(directory, classDecl.getType().getFullyQualifiedName());
+            if (Files.isRegularFile(file)) {
+                if (sourceHash == null) {
+                    sourceHash = sourceHash(cu.printAll());
+                }
+                read(file, sourceHash, markers);
+            }
+        }
+        if (markers.isEmpty()) {
+            return cu;
+        }
+
+        return (J.CompilationUnit) new JavaIsoVisitor<Integer>() {
+            @Override
+            public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, Integer p) {
+                JavaType.Method methodType = method.getMethodType();
+                String key = methodType == null ? null : key(methodType);
+                InstanceAccessMarker marker = key == null ? null : markers.get(key);
+                return marker == null ? method :
+                        method.withMarkers(method.getMarkers().computeByType(marker, (previous, replacement) -> replacement));
+            }
+        }.visitNonNull(cu, 0);
+    }
+
+    private static void read(Path file, String sourceHash, Map<String, InstanceAccessMarker> markers) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (lines.isEmpty() || !lines.get(0).equals(sourceHash)) {
+            return;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            String[] columns = line.split("\t", -1);
+            if (columns.length != 4) {
+                continue;
+            }
+            Set<String> callees = columns[2].isEmpty() ? Collections.emptySet() :
+                    new HashSet<>(Arrays.asList(columns[2].split(";")));
+            markers.put(columns[0], new InstanceAccessMarker(Tree.randomId(), Boolean.parseBoolean(columns[1]),
+                    callees, Boolean.parseBoolean(columns[3])));
+        }
+    }
+}
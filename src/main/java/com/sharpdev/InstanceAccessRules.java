@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+/**
+ * The rules deciding how a use of a name within a method body concerns the instance of the method, shared by
+ * {@link InstanceAccessSummary} and the {@code InstanceAccess} javac plugin, so that the LST and javac only differ in
+ * how they find out the facts the rules are given.
+ * <p>
+ * A use within a local or anonymous class in the method, or in a lambda, concerns the method too, and is decided for
+ * it as for every other method or lambda around the use.
+ */
+public final class InstanceAccessRules {
+
+    public enum Use {
+        /**
+         * Of no concern to the instance of the method.
+         */
+        NONE,
+
+        /**
+         * Calls an instance method of the class of the method, which is fine once that method is static itself.
+         */
+        CALLEE,
+
+        /**
+         * Uses the instance directly.
+         */
+        INSTANCE
+    }
+
+    private InstanceAccessRules() {
+    }
+
+    /**
+     * {@code Outer.this} and {@code Outer.super} always refer to an enclosing instance.
+     */
+    public static Use qualifiedThisOrSuper() {
+        return Use.INSTANCE;
+    }
+
+    /**
+     * 'this' or 'super' alone, or 'this' in {@code this.run()} or {@code this::run}.
+     *
+     * @param inClassBody    Used within a local or anonymous class, where 'this' is an instance of that class.
+     * @param selectsMethod  Selects a method, as in {@code this.run()} or {@code this::run}.
+     * @param selectedStatic The selected method is static.
+     * @param selectedOwn    The selected method is declared by the class of the method.
+     */
+    public static Use thisOrSuper(boolean inClassBody, boolean selectsMethod, boolean selectedStatic, boolean selectedOwn) {
+        if (inClassBody || (selectsMethod && selectedStatic)) {
+            return Use.NONE;
+        }
+        // this.run() and this::run are fine once run() is static
+        return selectsMethod && selectedOwn ? Use.CALLEE : Use.INSTANCE;
+    }
+
+    /**
+     * A field used by its name alone, or selected from 'this' or 'super'.
+     *
+     * @param own         Declared by the class of the method.
+     * @param ownerKnown  The class declaring the field is known.
+     * @param inClassBody Used within a local or anonymous class.
+     * @param outerMember The field is one of an enclosing instance, as {@link #outerMember(boolean, boolean)} decides,
+     *                    only needed within a local or anonymous class.
+     */
+    public static Use variable(boolean isStatic, boolean own, boolean ownerKnown, boolean inClassBody, boolean outerMember) {
+        if (isStatic) {
+            return Use.NONE;
+        }
+        // a field of its own class, or an inherited field or one of an enclosing instance, unless a local or
+        // anonymous class around the use inherits it itself
+        return own || (inClassBody ? outerMember : ownerKnown) ? Use.INSTANCE : Use.NONE;
+    }
+
+    /**
+     * A method called without a select.
+     *
+     * @param resolved    The called method is known. An unresolved call could be to a method of the instance.
+     * @param own         Declared by the class of the method.
+     * @param inClassBody Called within a local or anonymous class.
+     * @param outerMember The called method is one of an enclosing instance, as {@link #outerMember(boolean, boolean)}
+     *                    decides, only needed within a local or anonymous class.
+     */
+    public static Use call(boolean resolved, boolean isStatic, boolean own, boolean inClassBody, boolean outerMember) {
+        if (!resolved) {
+            return Use.INSTANCE;
+        } else if (isStatic) {
+            return Use.NONE;
+        } else if (own) {
+            // an instance method of its own class is only fine if it can be made static itself
+            return Use.CALLEE;
+        }
+        // an inherited method, or one of an enclosing instance, also within a local or anonymous class that doesn't
+        // inherit it itself
+        return !inClassBody || outerMember ? Use.INSTANCE : Use.NONE;
+    }
+
+    /**
+     * An object created with 'new' without an enclosing instance.
+     *
+     * @param innerClass            The created class is an inner class, i.e. a member class that isn't static.
+     * @param ownedByEnclosingClass The created class is a member of the class of the method, or of a class around it,
+     *                              and so gets the instance of the method as its enclosing instance.
+     */
+    public static Use newInstance(boolean innerClass, boolean ownedByEnclosingClass) {
+        return innerClass && ownedByEnclosingClass ? Use.INSTANCE : Use.NONE;
+    }
+
+    /**
+     * Whether an instance member used without a select within a local or anonymous class is one of the instance of the
+     * method, or of an enclosing instance, rather than one the local or anonymous class has itself.
+     *
+     * @param inheritedWithinMethod The member is declared by, or inherited by, a local or anonymous class around the
+     *                              use, within the method.
+     * @param inheritedByInstance   The member is declared by, or inherited by, the class of the method or a class
+     *                              around it.
+     */
+    public static boolean outerMember(boolean inheritedWithinMethod, boolean inheritedByInstance) {
+        return !inheritedWithinMethod && inheritedByInstance;
+    }
+}
@@ -0,0 +1,864 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import com.sharpdev.InstanceAccessRules.Use;
+import lombok.Value;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.Tree;
+import org.openrewrite.internal.lang.Nullable;
+import org.openrewrite.java.JavaIsoVisitor;
+import org.openrewrite.java.JavaVisitor;
+import org.openrewrite.java.tree.Expression;
+import org.openrewrite.java.tree.Flag;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.JavaType;
+import org.openrewrite.java.tree.TypeUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Collections.emptySet;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * How every method and lambda of a source file uses the instance it is called on, found in a single walk of the file.
+ * The walk happens when a method or lambda is first asked for, so a recipe that gets what it needs from
+ * {@link InstanceAccessMarker}s doesn't walk the file at all.
+ * <p>
+ * Summaries are cached in the {@link ExecutionContext} by source file, so that every recipe of a run that needs to
+ * know whether a method uses {@code this} can share one walk. A cached summary is replaced as soon as it is asked for
+ * with a different LST of the same source file, i.e. after any recipe has changed the file, and dropped by
+ * {@link #forget(J.CompilationUnit, ExecutionContext)} as soon as a recipe replaces the LST itself. A summary only
+ * holds on to its LST until it has walked it.
+ * <p>
+ * A summary may be shared by recipes running on several threads, so the walk happens at most once, under the lock of
+ * the summary.
+ */
+public class InstanceAccessSummary {
+
+    private static final String KEY = InstanceAccessSummary.class.getName();
+
+    /**
+     * Only to tell whether the summary is one of a given LST.
+     */
+    private final WeakReference<J.CompilationUnit> sourceFile;
+
+    /**
+     * The LST still to walk, or null once it has been walked.
+     */
+    @Nullable
+    private J.CompilationUnit unscanned;
+
+    private final Map<UUID, MethodSummary> methods = new HashMap<>();
+    private final Map<JavaType.Method, String> methodKeys = new IdentityHashMap<>();
+
+    private long nodesVisited;
+
+    private InstanceAccessSummary(J.CompilationUnit sourceFile) {
+        this.sourceFile = new WeakReference<>(sourceFile);
+        this.unscanned = sourceFile;
+    }
+
+    /**
+     * @return The summary of the source file, to be walked only if there is no summary of this LST of it yet.
+     */
+    public static InstanceAccessSummary of(J.CompilationUnit sourceFile, ExecutionContext ctx) {
+        Map<UUID, InstanceAccessSummary> cache = ctx.getMessage(KEY);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<>();
+            ctx.putMessage(KEY, cache);
+        }
+        return cache.compute(sourceFile.getId(), (id, cached) -> cached == null || !cached.isOf(sourceFile) ?
+                new InstanceAccessSummary(sourceFile) : cached);
+    }
+
+    /**
+     * Drops the summary of an LST that has been replaced by a changed one, which nothing will ask about anymore.
+     */
+    public static void forget(J.CompilationUnit sourceFile, ExecutionContext ctx) {
+        Map<UUID, InstanceAccessSummary> cache = ctx.getMessage(KEY);
+        if (cache != null) {
+            cache.computeIfPresent(sourceFile.getId(), (id, cached) -> cached.isOf(sourceFile) ? null : cached);
+        }
+    }
+
+    /**
+     * @return A summary of the source file found by the recursive visitor the iterative scan replaced, for comparing
+     * the two. It is not cached.
+     */
+    static InstanceAccessSummary withVisitor(J.CompilationUnit sourceFile) {
+        InstanceAccessSummary summary = new InstanceAccessSummary(sourceFile);
+        synchronized (summary) {
+            new VisitorScan(summary).visit(sourceFile, summary);
+            summary.unscanned = null;
+        }
+        return summary;
+    }
+
+    /**
+     * @return The summary of a method declared in the source file, or null for a method without a body or one that
+     * is not part of this LST of the source file.
+     */
+    @Nullable
+    public synchronized MethodSummary get(J.MethodDeclaration method) {
+        scanOnce();
+        return methods.get(method.getId());
+    }
+
+    /**
+     * @return The summary of a lambda in the source file, or null for one that is not part of this LST of the source
+     * file. A lambda that uses the instance captures {@code this}.
+     */
+    @Nullable
+    public synchronized MethodSummary get(J.Lambda lambda) {
+        scanOnce();
+        return methods.get(lambda.getId());
+    }
+
+    /**
+     * @return The key identifying a method in {@link MethodSummary#getCallees()}.
+     */
+    public synchronized String methodKey(JavaType.Method methodType) {
+        String key = methodKeys.get(methodType);
+        if (key == null) {
+            key = methodType.toString();
+            methodKeys.put(methodType, key);
+        }
+        return key;
+    }
+
+    /**
+     * @return The number of LST nodes visited to build the summary, none if nothing was asked for yet.
+     */
+    public synchronized long getNodesVisited() {
+        return nodesVisited;
+    }
+
+    private boolean isOf(J.CompilationUnit sourceFile) {
+        return this.sourceFile.get() == sourceFile;
+    }
+
+    private void scanOnce() {
+        if (unscanned != null) {
+            new Scan(this).scan(unscanned);
+            unscanned = null;
+        }
+    }
+
+    @Value
+    public static class MethodSummary {
+
+        /**
+         * Reads or writes a field of the instance, including inherited fields and those of an enclosing instance.
+         */
+        boolean touchesInstanceFields;
+
+        /**
+         * Calls a method on the instance, including inherited methods, those of an enclosing instance and the
+         * methods of its own class listed in {@link #getCallees()}.
+         */
+        boolean callsInstanceMethods;
+
+        /**
+         * Refers to {@code this} or {@code super}, qualified or not, other than to call a method of its own class
+         * with {@code this.run()} or {@code this::run}.
+         */
+        boolean usesThis;
+
+        /**
+         * Uses the instance within a lambda, which then captures {@code this}.
+         */
+        boolean capturesThisInLambda;
+
+        /**
+         * Uses the instance other than by calling instance methods of its own class.
+         */
+        boolean accessesInstanceDirectly;
+
+        /**
+         * The instance methods of its own class it calls on the instance, including through {@code this.run()} and
+         * {@code this::run}, by {@link InstanceAccessSummary#methodKey(JavaType.Method)}.
+         * The method only needs its instance for these calls if it doesn't access the instance directly.
+         */
+        Set<String> callees;
+
+        /**
+         * Declares local or anonymous classes, whose methods are summarized on their own.
+         */
+        boolean declaresClasses;
+
+        /**
+         * @return true if the method uses its instance in any way.
+         */
+        public boolean usesInstance() {
+            return accessesInstanceDirectly || !callees.isEmpty();
+        }
+    }
+
+    /**
+     * The walk of one method or lambda, still open while nodes within its body are visited.
+     */
+    private static class MethodFrame {
+        @Nullable
+        final JavaType.FullyQualified rootType;
+
+        /**
+         * How many local or anonymous class bodies within the method enclose the node being visited. Within them,
+         * 'this' and unqualified members may refer to that class rather than to the instance of the method.
+         */
+        int classBodyDepth;
+
+        /**
+         * The number of local and anonymous class bodies that enclosed the method when it was entered.
+         */
+        final int classBodyBase;
+
+        /**
+         * The types whose instance members the instance of the method, or an enclosing instance of it, provides.
+         */
+        @Nullable
+        private Set<String> outerHierarchy;
+
+        int lambdaDepth;
+
+        boolean touchesInstanceFields;
+        boolean callsInstanceMethods;
+        boolean usesThis;
+        boolean capturesThisInLambda;
+        boolean accessesInstanceDirectly;
+        Set<String> callees = emptySet();
+        boolean declaresClasses;
+
+        MethodFrame(@Nullable JavaType.FullyQualified rootType, int classBodyBase) {
+            this.rootType = rootType;
+            this.classBodyBase = classBodyBase;
+        }
+
+        Set<String> outerHierarchy() {
+            if (outerHierarchy == null) {
+                outerHierarchy = enclosingHierarchy(rootType);
+            }
+            return outerHierarchy;
+        }
+
+        void instanceAccess() {
+            accessesInstanceDirectly = true;
+            capturesThisInLambda |= lambdaDepth > 0;
+        }
+
+        void callee(String key) {
+            if (callees.isEmpty()) {
+                callees = new HashSet<>();
+            }
+            callees.add(key);
+            callsInstanceMethods = true;
+            capturesThisInLambda |= lambdaDepth > 0;
+        }
+
+        MethodSummary summary() {
+            return new MethodSummary(touchesInstanceFields, callsInstanceMethods, usesThis, capturesThisInLambda,
+                    accessesInstanceDirectly, callees, declaresClasses);
+        }
+    }
+
+    /**
+     * The frames of every method and lambda enclosing the node being scanned, and how each kind of use of the instance
+     * affects them.
+     * <p>
+     * Keeps a frame for every method enclosing the node, since a field used in a local class may, for instance, be one
+     * of the local class and of no concern to the method around it, or one of the outer instance captured by the
+     * local class, which then concerns both.
+     */
+    private static class Frames {
+        private final InstanceAccessSummary summary;
+        private final Deque<MethodFrame> open = new ArrayDeque<>();
+
+        /**
+         * The hierarchies of the local and anonymous class bodies enclosing the node, innermost last.
+         */
+        private final List<Set<String>> classBodies = new ArrayList<>();
+
+        Frames(InstanceAccessSummary summary) {
+            this.summary = summary;
+        }
+
+        boolean isEmpty() {
+            return open.isEmpty();
+        }
+
+        void enterMethod(@Nullable JavaType.FullyQualified rootType) {
+            open.push(new MethodFrame(rootType, classBodies.size()));
+        }
+
+        void exitMethod(UUID id) {
+            summary.methods.put(id, open.pop().summary());
+        }
+
+        void enterLambda(@Nullable JavaType.FullyQualified rootType) {
+            for (MethodFrame frame : open) {
+                frame.lambdaDepth++;
+            }
+            enterMethod(rootType);
+        }
+
+        void exitLambda(UUID id) {
+            exitMethod(id);
+            for (MethodFrame enclosing : open) {
+                enclosing.lambdaDepth--;
+            }
+        }
+
+        /**
+         * @param types The type of a class declaration, or those of an anonymous class and of the type it extends or
+         *              implements.
+         */
+        void enterClassBody(@Nullable JavaType... types) {
+            Set<String> hierarchy = emptySet();
+            if (!open.isEmpty()) {
+                // only needed to tell the members of the class from those of the instance of an enclosing method
+                hierarchy = new HashSet<>();
+                for (JavaType type : types) {
+                    collectHierarchy(TypeUtils.asFullyQualified(type), hierarchy);
+                }
+            }
+            classBodies.add(hierarchy);
+            for (MethodFrame frame : open) {
+                frame.classBodyDepth++;
+                frame.declaresClasses = true;
+            }
+        }
+
+        void exitClassBody() {
+            classBodies.remove(classBodies.size() - 1);
+            for (MethodFrame frame : open) {
+                frame.classBodyDepth--;
+            }
+        }
+
+        /**
+         * @return true if an instance member of the type, used without a select within a local or anonymous class in
+         * the method of the frame, is one of the instance of that method or of an enclosing instance.
+         */
+        private boolean outerMember(MethodFrame frame, @Nullable JavaType owner) {
+            JavaType.FullyQualified type = TypeUtils.asFullyQualified(owner);
+            if (type == null) {
+                return false;
+            }
+            String name = type.getFullyQualifiedName();
+            boolean inheritedWithinMethod = false;
+            for (int i = frame.classBodyBase; i < classBodies.size() && !inheritedWithinMethod; i++) {
+                inheritedWithinMethod = classBodies.get(i).contains(name);
+            }
+            return InstanceAccessRules.outerMember(inheritedWithinMethod, frame.outerHierarchy().contains(name));
+        }
+
+        void qualifiedThisOrSuper() {
+            if (InstanceAccessRules.qualifiedThisOrSuper() != Use.INSTANCE) {
+                return;
+            }
+            for (MethodFrame frame : open) {
+                frame.usesThis = true;
+                frame.instanceAccess();
+            }
+        }
+
+        /**
+         * @param selected The method called in {@code this.run()} or referred to in {@code this::run} when 'this' is
+         *                 used that way, or null otherwise.
+         */
+        void thisOrSuper(@Nullable JavaType.Method selected) {
+            for (MethodFrame frame : open) {
+                Use use = InstanceAccessRules.thisOrSuper(frame.classBodyDepth > 0, selected != null,
+                        selected != null && selected.hasFlags(Flag.Static),
+                        selected != null && Objects.equals(frame.rootType, selected.getDeclaringType()));
+                if (use == Use.CALLEE) {
+                    frame.callee(summary.methodKey(selected));
+                } else if (use == Use.INSTANCE) {
+                    frame.usesThis = true;
+                    frame.instanceAccess();
+                }
+            }
+        }
+
+        /**
+         * A variable referred to by its name alone, or selected from 'this' or 'super'.
+         */
+        void variable(@Nullable JavaType.Variable fieldType) {
+            if (fieldType == null) {
+                return;
+            }
+            JavaType owner = fieldType.getOwner();
+            for (MethodFrame frame : open) {
+                boolean inClassBody = frame.classBodyDepth > 0;
+                if (InstanceAccessRules.variable(fieldType.hasFlags(Flag.Static), Objects.equals(frame.rootType, owner),
+                        owner instanceof JavaType.FullyQualified, inClassBody,
+                        inClassBody && outerMember(frame, owner)) == Use.INSTANCE) {
+                    frame.touchesInstanceFields = true;
+                    frame.instanceAccess();
+                }
+            }
+        }
+
+        /**
+         * An object created with 'new' without an enclosing instance.
+         */
+        void newInstance(@Nullable JavaType created) {
+            JavaType.FullyQualified type = TypeUtils.asFullyQualified(created);
+            boolean innerClass = isInnerClass(type);
+            for (MethodFrame frame : open) {
+                if (InstanceAccessRules.newInstance(innerClass,
+                        innerClass && isOwnedByEnclosingClass(requireNonNull(type), frame.rootType)) == Use.INSTANCE) {
+                    frame.usesThis = true;
+                    frame.instanceAccess();
+                }
+            }
+        }
+
+        /**
+         * A method called without a select.
+         */
+        void call(@Nullable JavaType.Method methodType) {
+            for (MethodFrame frame : open) {
+                boolean inClassBody = frame.classBodyDepth > 0;
+                Use use = methodType == null ? InstanceAccessRules.call(false, false, false, inClassBody, false) :
+                        InstanceAccessRules.call(true, methodType.hasFlags(Flag.Static),
+                                Objects.equals(frame.rootType, methodType.getDeclaringType()), inClassBody,
+                                inClassBody && outerMember(frame, methodType.getDeclaringType()));
+                if (use == Use.CALLEE) {
+                    frame.callee(summary.methodKey(methodType));
+                } else if (use == Use.INSTANCE) {
+                    frame.callsInstanceMethods = true;
+                    frame.instanceAccess();
+                }
+            }
+        }
+    }
+
+    /**
+     * Where the scan leaves a method, lambda or class body, popped from the work stack once everything within it has
+     * been scanned.
+     */
+    private static final class Exit {
+        static final Exit CLASS_DECLARATION = new Exit(null, false);
+        static final Exit ANONYMOUS_CLASS_BODY = new Exit(null, false);
+
+        @Nullable
+        final UUID methodId;
+
+        final boolean lambda;
+
+        Exit(@Nullable UUID methodId, boolean lambda) {
+            this.methodId = methodId;
+            this.lambda = lambda;
+        }
+    }
+
+    /**
+     * Scans a source file with an explicit work stack rather than by recursion, so that deeply nested expressions,
+     * such as generated concatenations of thousands of strings, can't overflow the call stack. Only the kinds of node
+     * that can hold an identifier, a method invocation or a field access are descended into; nodes of any other kind
+     * not handled here have their children found by {@link Children}.
+     */
+    private static class Scan {
+        private final InstanceAccessSummary summary;
+        private final Frames frames;
+        private final Deque<Object> work = new ArrayDeque<>();
+        private final Children children = new Children();
+
+        /**
+         * The types of the class declarations enclosing the node being scanned, innermost last. A type may be null.
+         */
+        private final List<JavaType.FullyQualified> classTypes = new ArrayList<>();
+
+        Scan(InstanceAccessSummary summary) {
+            this.summary = summary;
+            this.frames = new Frames(summary);
+        }
+
+        void scan(J.CompilationUnit cu) {
+            work.push(cu);
+            while (!work.isEmpty()) {
+                Object next = work.pop();
+                if (next instanceof Exit) {
+                    exit((Exit) next);
+                } else {
+                    scan((J) next);
+                }
+            }
+        }
+
+        private void exit(Exit exit) {
+            if (exit == Exit.CLASS_DECLARATION) {
+                classTypes.remove(classTypes.size() - 1);
+                frames.exitClassBody();
+            } else if (exit == Exit.ANONYMOUS_CLASS_BODY) {
+                frames.exitClassBody();
+            } else if (exit.lambda) {
+                frames.exitLambda(exit.methodId);
+            } else {
+                frames.exitMethod(exit.methodId);
+            }
+        }
+
+        private void scan(J j) {
+            summary.nodesVisited++;
+            if (j instanceof J.Identifier) {
+                J.Identifier identifier = (J.Identifier) j;
+                if (isThisOrSuper(identifier.getSimpleName())) {
+                    frames.thisOrSuper(null);
+                } else {
+                    frames.variable(identifier.getFieldType());
+                }
+            } else if (j instanceof J.MethodInvocation) {
+                J.MethodInvocation mi = (J.MethodInvocation) j;
+                Expression select = mi.getSelect();
+                if (select == null) {
+                    frames.call(mi.getMethodType());
+                } else if (isThis(select)) {
+                    summary.nodesVisited++;
+                    frames.thisOrSuper(mi.getMethodType());
+                } else {
+                    work.push(select);
+                }
+                pushAll(mi.getArguments());
+            } else if (j instanceof J.FieldAccess) {
+                J.FieldAccess fa = (J.FieldAccess) j;
+                if (isThisOrSuper(fa.getSimpleName())) {
+                    frames.qualifiedThisOrSuper();
+                }
+                Expression target = fa.getTarget();
+                work.push(target);
+                if (target instanceof J.Identifier && isThisOrSuper(((J.Identifier) target).getSimpleName())) {
+                    // the name of a field selected from any other expression is not one of the instance
+                    work.push(fa.getName());
+                }
+            } else if (j instanceof J.Binary) {
+                work.push(((J.Binary) j).getLeft());
+                work.push(((J.Binary) j).getRight());
+            } else if (j instanceof J.Literal || j instanceof J.Primitive || j instanceof J.Empty ||
+                       j instanceof J.Annotation || j instanceof J.Import || j instanceof J.Package) {
+                // nothing within can use the instance
+            } else if (j instanceof J.Block) {
+                pushAll(((J.Block) j).getStatements());
+            } else if (j instanceof J.VariableDeclarations) {
+                for (J.VariableDeclarations.NamedVariable variable : ((J.VariableDeclarations) j).getVariables()) {
+                    if (variable.getInitializer() != null) {
+                        work.push(variable.getInitializer());
+                    }
+                }
+            } else if (j instanceof J.Return) {
+                if (((J.Return) j).getExpression() != null) {
+                    work.push(((J.Return) j).getExpression());
+                }
+            } else if (j instanceof J.Assignment) {
+                work.push(((J.Assignment) j).getVariable());
+                work.push(((J.Assignment) j).getAssignment());
+            } else if (j instanceof J.AssignmentOperation) {
+                work.push(((J.AssignmentOperation) j).getVariable());
+                work.push(((J.AssignmentOperation) j).getAssignment());
+            } else if (j instanceof J.Unary) {
+                work.push(((J.Unary) j).getExpression());
+            } else if (j instanceof J.Parentheses) {
+                work.push(((J.Parentheses<?>) j).getTree());
+            } else if (j instanceof J.ControlParentheses) {
+                work.push(((J.ControlParentheses<?>) j).getTree());
+            } else if (j instanceof J.TypeCast) {
+                work.push(((J.TypeCast) j).getExpression());
+            } else if (j instanceof J.Ternary) {
+                J.Ternary ternary = (J.Ternary) j;
+                work.push(ternary.getCondition());
+                work.push(ternary.getTruePart());
+                work.push(ternary.getFalsePart());
+            } else if (j instanceof J.If) {
+                J.If iff = (J.If) j;
+                work.push(iff.getIfCondition());
+                work.push(iff.getThenPart());
+                if (iff.getElsePart() != null) {
+                    work.push(iff.getElsePart());
+                }
+            } else if (j instanceof J.If.Else) {
+                work.push(((J.If.Else) j).getBody());
+            } else if (j instanceof J.ArrayAccess) {
+                work.push(((J.ArrayAccess) j).getIndexed());
+                work.push(((J.ArrayAccess) j).getDimension().getIndex());
+            } else if (j instanceof J.MemberReference) {
+                J.MemberReference ref = (J.MemberReference) j;
+                if (isThis(ref.getContaining())) {
+                    summary.nodesVisited++;
+                    frames.thisOrSuper(ref.getMethodType());
+                } else {
+                    work.push(ref.getContaining());
+                }
+            } else if (j instanceof J.NewClass) {
+                J.NewClass newClass = (J.NewClass) j;
+                if (newClass.getEnclosing() != null) {
+                    work.push(newClass.getEnclosing());
+                } else if (newClass.getClazz() != null) {
+                    frames.newInstance(newClass.getClazz().getType());
+                }
+                if (newClass.getArguments() != null) {
+                    pushAll(newClass.getArguments());
+                }
+                if (newClass.getBody() != null) {
+                    frames.enterClassBody(newClass.getType(), newClass.getClazz() == null ? null : newClass.getClazz().getType());
+                    work.push(Exit.ANONYMOUS_CLASS_BODY);
+                    work.push(newClass.getBody());
+                }
+            } else if (j instanceof J.Lambda) {
+                frames.enterLambda(enclosingClassType());
+                work.push(new Exit(j.getId(), true));
+                work.push(((J.Lambda) j).getBody());
+            } else if (j instanceof J.MethodDeclaration) {
+                J.MethodDeclaration method = (J.MethodDeclaration) j;
+                if (method.getBody() != null) {
+                    frames.enterMethod(enclosingClassType());
+                    work.push(new Exit(method.getId(), false));
+                    work.push(method.getBody());
+                }
+            } else if (j instanceof J.ClassDeclaration) {
+                frames.enterClassBody(((J.ClassDeclaration) j).getType());
+                classTypes.add(((J.ClassDeclaration) j).getType());
+                work.push(Exit.CLASS_DECLARATION);
+                work.push(((J.ClassDeclaration) j).getBody());
+            } else if (j instanceof J.CompilationUnit) {
+                pushAll(((J.CompilationUnit) j).getClasses());
+            } else {
+                children.push(j, work);
+            }
+        }
+
+        private void pushAll(List<? extends J> trees) {
+            for (J tree : trees) {
+                work.push(tree);
+            }
+        }
+
+        @Nullable
+        private JavaType.FullyQualified enclosingClassType() {
+            return classTypes.get(classTypes.size() - 1);
+        }
+
+        private static boolean isThis(J tree) {
+            return tree instanceof J.Identifier && "this".equals(((J.Identifier) tree).getSimpleName());
+        }
+    }
+
+    /**
+     * Pushes the children of a node of a kind {@link Scan} doesn't handle itself, by letting the visitor visit the
+     * node but none of its children. Also used by other walks that must not recurse.
+     */
+    static class Children extends JavaVisitor<Deque<Object>> {
+        @Nullable
+        private J parent;
+
+        void push(J tree, Deque<Object> work) {
+            parent = tree;
+            visit(tree, work);
+        }
+
+        @Override
+        public @Nullable J visit(@Nullable Tree tree, Deque<Object> work) {
+            if (tree != parent) {
+                if (tree != null) {
+                    work.push(tree);
+                }
+                return (J) tree;
+            }
+            return super.visit(tree, work);
+        }
+    }
+
+    /**
+     * The same search as {@link Scan} as a recursive visitor, which is simpler to follow but may overflow the call
+     * stack on deeply nested expressions. Kept as the reference the scan is tested and benchmarked against.
+     */
+    private static class VisitorScan extends JavaIsoVisitor<InstanceAccessSummary> {
+
+        private final Frames frames;
+
+        VisitorScan(InstanceAccessSummary summary) {
+            this.frames = new Frames(summary);
+        }
+
+        @Override
+        public J preVisit(J tree, InstanceAccessSummary summary) {
+            summary.nodesVisited++;
+            return super.preVisit(tree, summary);
+        }
+
+        @Override
+        public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, InstanceAccessSummary summary) {
+            if (method.getBody() == null) {
+                return method;
+            }
+            J.ClassDeclaration classDecl = getCursor().dropParentUntil(parent -> parent instanceof J.ClassDeclaration).getValue();
+            frames.enterMethod(classDecl.getType());
+            J.MethodDeclaration md = super.visitMethodDeclaration(method, summary);
+            frames.exitMethod(method.getId());
+            return md;
+        }
+
+        @Override
+        public J.ClassDeclaration visitClassDeclaration(J.ClassDeclaration classDecl, InstanceAccessSummary summary) {
+            frames.enterClassBody(classDecl.getType());
+            J.ClassDeclaration c = super.visitClassDeclaration(classDecl, summary);
+            frames.exitClassBody();
+            return c;
+        }
+
+        @Override
+        public J.Block visitBlock(J.Block block, InstanceAccessSummary summary) {
+            Object parent = getCursor().getParentOrThrow().getValue();
+            boolean anonymousClassBody = parent instanceof J.NewClass;
+            if (anonymousClassBody) {
+                J.NewClass newClass = (J.NewClass) parent;
+                frames.enterClassBody(newClass.getType(), newClass.getClazz() == null ? null : newClass.getClazz().getType());
+            }
+            J.Block b = super.visitBlock(block, summary);
+            if (anonymousClassBody) {
+                frames.exitClassBody();
+            }
+            return b;
+        }
+
+        @Override
+        public J.NewClass visitNewClass(J.NewClass newClass, InstanceAccessSummary summary) {
+            if (newClass.getEnclosing() == null && newClass.getClazz() != null) {
+                frames.newInstance(newClass.getClazz().getType());
+            }
+            return super.visitNewClass(newClass, summary);
+        }
+
+        @Override
+        public J.Lambda visitLambda(J.Lambda lambda, InstanceAccessSummary summary) {
+            J.ClassDeclaration classDecl = getCursor().dropParentUntil(parent -> parent instanceof J.ClassDeclaration).getValue();
+            frames.enterLambda(classDecl.getType());
+            J.Lambda l = super.visitLambda(lambda, summary);
+            frames.exitLambda(lambda.getId());
+            return l;
+        }
+
+        @Override
+        public J.FieldAccess visitFieldAccess(J.FieldAccess fieldAccess, InstanceAccessSummary summary) {
+            J.FieldAccess fa = super.visitFieldAccess(fieldAccess, summary);
+            if (isThisOrSuper(fa.getSimpleName())) {
+                frames.qualifiedThisOrSuper();
+            }
+            return fa;
+        }
+
+        @Override
+        public J.Identifier visitIdentifier(J.Identifier identifier, InstanceAccessSummary summary) {
+            J.Identifier i = super.visitIdentifier(identifier, summary);
+            if (frames.isEmpty()) {
+                return i;
+            }
+            if (isThisOrSuper(i.getSimpleName())) {
+                frames.thisOrSuper("this".equals(i.getSimpleName()) ? methodSelectedFrom(identifier) : null);
+            } else if (!isSelectedFromOtherObject(identifier)) {
+                frames.variable(i.getFieldType());
+            }
+            return i;
+        }
+
+        @Override
+        public J.MethodInvocation visitMethodInvocation(J.MethodInvocation method, InstanceAccessSummary summary) {
+            J.MethodInvocation mi = super.visitMethodInvocation(method, summary);
+            // the select has been searched on its own: 'this.run()' uses the instance, 'other.run()' does not
+            if (mi.getSelect() == null) {
+                frames.call(mi.getMethodType());
+            }
+            return mi;
+        }
+
+        /**
+         * @return The method called in {@code this.run()} or referred to in {@code this::run} when the identifier is
+         * that 'this', or null otherwise.
+         */
+        @Nullable
+        private JavaType.Method methodSelectedFrom(J.Identifier identifier) {
+            Object parent = getCursor().dropParentUntil(J.class::isInstance).getValue();
+            if (parent instanceof J.MethodInvocation && ((J.MethodInvocation) parent).getSelect() == identifier) {
+                return ((J.MethodInvocation) parent).getMethodType();
+            } else if (parent instanceof J.MemberReference && ((J.MemberReference) parent).getContaining() == identifier) {
+                return ((J.MemberReference) parent).getMethodType();
+            }
+            return null;
+        }
+
+        /**
+         * @return true for the name of a field selected from an expression other than 'this' or 'super', such as
+         * {@code other.x}. The expression it is selected from is searched on its own.
+         */
+        private boolean isSelectedFromOtherObject(J.Identifier identifier) {
+            Object parent = getCursor().dropParentUntil(J.class::isInstance).getValue();
+            if (!(parent instanceof J.FieldAccess) || ((J.FieldAccess) parent).getName() != identifier) {
+                return false;
+            }
+            Expression target = ((J.FieldAccess) parent).getTarget();
+            return !(target instanceof J.Identifier) || !isThisOrSuper(((J.Identifier) target).getSimpleName());
+        }
+    }
+
+    private static boolean isThisOrSuper(String name) {
+        return "this".equals(name) || "super".equals(name);
+    }
+
+    /**
+     * @return The types whose instance members an instance of the type, or an enclosing instance of it, provides.
+     */
+    static Set<String> enclosingHierarchy(@Nullable JavaType.FullyQualified type) {
+        Set<String> hierarchy = new HashSet<>();
+        for (JavaType.FullyQualified enclosing = type; enclosing != null; enclosing = enclosing.getOwningClass()) {
+            collectHierarchy(enclosing, hierarchy);
+        }
+        return hierarchy;
+    }
+
+    /**
+     * @return true for a member class that isn't static, which is created with an enclosing instance.
+     */
+    static boolean isInnerClass(@Nullable JavaType.FullyQualified type) {
+        return type != null && type.getOwningClass() != null && !type.hasFlags(Flag.Static) &&
+               type.getKind() == JavaType.FullyQualified.Kind.Class;
+    }
+
+    /**
+     * @return true if an inner class is a member of the class, or of a class around it, and so gets an instance of
+     * the class as its enclosing instance when created within it.
+     */
+    static boolean isOwnedByEnclosingClass(JavaType.FullyQualified innerClass, @Nullable JavaType.FullyQualified type) {
+        String owner = requireNonNull(innerClass.getOwningClass()).getFullyQualifiedName();
+        for (JavaType.FullyQualified enclosing = type; enclosing != null; enclosing = enclosing.getOwningClass()) {
+            if (owner.equals(enclosing.getFullyQualifiedName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void collectHierarchy(@Nullable JavaType.FullyQualified type, Set<String> hierarchy) {
+        if (type == null || !hierarchy.add(type.getFullyQualifiedName())) {
+            return;
+        }
+        collectHierarchy(type.getSupertype(), hierarchy);
+        for (JavaType.FullyQualified anInterface : type.getInterfaces()) {
+            collectHierarchy(anInterface, hierarchy);
+        }
+    }
+}
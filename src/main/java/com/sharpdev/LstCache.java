@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.TreeSerializer;
+import org.openrewrite.internal.lang.Nullable;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Parsed, type-attributed LSTs of source files kept on disk between runs, so that running the recipe again on an
+ * unchanged checkout, for instance with other options, doesn't have to parse every file again.
+ * <p>
+ * Every source file has one entry, named after a hash of its path, holding the hash of the source it was parsed from
+ * and a fingerprint of the classpath and parser it was parsed with, followed by the LSTs as rewrite's
+ * {@link TreeSerializer} writes them. An entry whose hashes no longer match is stale
+ * and is replaced by parsing the file again, and so is one that can't be read for any other reason. Entries are
+ * memory-mapped and only read when their file is processed.
+ * <p>
+ * An entry that can't be read or written is reported to the error handler of the {@link ExecutionContext} the file
+ * is processed with, since it means that the file is parsed again on every run.
+ */
+public class LstCache {
+
+    private static final int MAGIC = 0x4c535443;
+    private static final int FORMAT = 2;
+    private static final int HASH_LENGTH = 32;
+
+    private final Path directory;
+    private final byte[] classpathFingerprint;
+    private final TreeSerializer<J.CompilationUnit> serializer = new TreeSerializer<>();
+
+    /**
+     * @param directory The directory holding the entries, created when first written to.
+     * @param classpath The classpath the sources are parsed against. Entries parsed against any other classpath, or
+     *                  against one whose files have changed since, are stale.
+     */
+    public LstCache(Path directory, List<Path> classpath) {
+        this.directory = directory;
+        this.classpathFingerprint = fingerprint(classpath);
+    }
+
+    /**
+     * @param root   The root of the source tree.
+     * @param source The source file, relative to {@code root}.
+     * @param parse  Parses the source file when there is no up-to-date entry for it.
+     * @param ctx    Where an entry that can't be read or written is reported.
+     * @return The LSTs of the source file, from its entry when it is up-to-date.
+     */
+    public List<J.CompilationUnit> load(Path root, Path source, Supplier<List<J.CompilationUnit>> parse,
+                                        ExecutionContext ctx) {
+        byte[] sourceHash;
+        try {
+            sourceHash = sha256(Files.readAllBytes(root.resolve(source)));
+        } catch (IOException e) {
+            // let the parser report the file it can't read
+            return parse.get();
+        }
+
+        Path entry = entry(source);
+        List<J.CompilationUnit> cached = read(entry, sourceHash, ctx);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<J.CompilationUnit> parsed = parse.get();
+        if (!parsed.isEmpty()) {
+            write(entry, sourceHash, parsed, ctx);
+        }
+        return parsed;
+    }
+
+    Path entry(Path source) {
+        return directory.resolve(hex(sha256(SourceFileCost.normalize(source).getBytes(StandardCharsets.UTF_8))) + ".lst");
+    }
+
+    /**
+     * @return The LSTs held by the entry, or null if there is none, it is stale, or it can't be read.
+     */
+    @Nullable
+    private List<J.CompilationUnit> read(Path entry, byte[] sourceHash, ExecutionContext ctx) {
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 + 2 * HASH_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT ||
+                !matches(buffer, sourceHash) || !matches(buffer, classpathFingerprint)) {
+                return null;
+            }
+            return serializer.readList(new ByteBufferBackedInputStream(buffer));
+        } catch (IOException | RuntimeException e) {
+            // an entry written by another version of the LST classes, or cut short, is parsed again
+            ctx.getOnError().accept(new IllegalStateException("Unable to read cached LST " + entry, e));
+            return null;
+        }
+    }
+
+    private void write(Path entry, byte[] sourceHash, List<J.CompilationUnit> cus, ExecutionContext ctx) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT);
+                    out.write(sourceHash);
+                    out.write(classpathFingerprint);
+                    serializer.write(cus, out);
+                }
+                // readers see either the previous entry or the complete new one
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | RuntimeException e) {
+            // the cache only saves time, a file that can't be cached is parsed again next time
+            ctx.getOnError().accept(new IllegalStateException("Unable to write cached LST " + entry, e));
+        }
+    }
+
+    private static boolean matches(MappedByteBuffer buffer, byte[] hash) {
+        boolean matches = true;
+        for (byte b : hash) {
+            matches &= buffer.get() == b;
+        }
+        return matches;
+    }
+
+    /**
+     * A hash of the path, size and modification time of every file on the classpath, and of the versions of the
+     * parser and the JVM, which together decide how sources are attributed.
+     */
+    static byte[] fingerprint(List<Path> classpath) {
+        StringBuilder inputs = new StringBuilder()
+                .append(JavaParser.class.getPackage().getImplementationVersion()).append('\n')
+                .append(System.getProperty("java.specification.version")).append('\n');
+        for (Path entry : classpath) {
+            inputs.append(entry.toAbsolutePath()).append('\n');
+            if (Files.isDirectory(entry)) {
+                try (Stream<Path> walk = Files.walk(entry)) {
+                    List<Path> files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                    for (Path file : files) {
+                        appendFile(inputs, file, entry.relativize(file).toString());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (Files.isRegularFile(entry)) {
+                appendFile(inputs, entry, "");
+            }
+        }
+        return sha256(inputs.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendFile(StringBuilder inputs, Path file, String name) {
+        try {
+            inputs.append(name).append(' ').append(Files.size(file)).append(' ')
+                    .append(Files.getLastModifiedTime(file).toMillis()).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
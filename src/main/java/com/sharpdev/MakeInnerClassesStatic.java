@@ -0,0 +1,451 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import com.sharpdev.InstanceAccessRules.Use;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+import org.openrewrite.*;
+import org.openrewrite.internal.lang.Nullable;
+import org.openrewrite.java.JavaIsoVisitor;
+import org.openrewrite.java.tree.*;
+import org.openrewrite.marker.Markers;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+
+/**
+ * The companion of {@link MakePrivateOrFinalMethodsStatic} for classes: an inner class holds a reference to the
+ * instance of its enclosing class in every instance, which costs memory and keeps the enclosing instance from being
+ * garbage collected, even when the inner class never uses it.
+ * <p>
+ * Only private inner classes are changed, since every {@code outer.new Inner()} creating one is then in the same
+ * source file and can be rewritten to {@code new Outer.Inner()}. That drops the evaluation of {@code outer}, and the
+ * check that it isn't null, so a class is left alone if it is created with an enclosing instance given by anything
+ * other than {@code this} or a variable.
+ */
+@Incubating(since = "7.0.0")
+@Value
+@EqualsAndHashCode(callSuper = true)
+public class MakeInnerClassesStatic extends Recipe {
+
+    @Override
+    public String getDisplayName() {
+        return "Make inner classes that don't use the enclosing instance static";
+    }
+
+    @Override
+    public String getDescription() {
+        return "RSPEC-2694: private inner classes that never use the instance of their enclosing class should be " +
+               "'static' nested classes, so that they don't keep a reference to it.";
+    }
+
+    @Override
+    public JavaIsoVisitor<ExecutionContext> getVisitor() {
+        return new JavaIsoVisitor<ExecutionContext>() {
+            @Override
+            public J.CompilationUnit visitCompilationUnit(J.CompilationUnit cu, ExecutionContext p) {
+                Set<String> innerClasses = new HashSet<>();
+                new JavaIsoVisitor<Set<String>>() {
+                    @Override
+                    public J.ClassDeclaration visitClassDeclaration(J.ClassDeclaration classDecl, Set<String> inner) {
+                        boolean nested = getCursor().getParentOrThrow().firstEnclosing(J.ClassDeclaration.class) != null;
+                        if (nested && classDecl.getType() != null && classDecl.getKind() == J.ClassDeclaration.Kind.Type.Class &&
+                            !classDecl.hasModifier(J.Modifier.Type.Static)) {
+                            inner.add(classDecl.getType().getFullyQualifiedName());
+                        }
+                        return super.visitClassDeclaration(classDecl, inner);
+                    }
+                }.visit(cu, innerClasses);
+
+                FindConvertibleClasses candidates = new FindConvertibleClasses(innerClasses);
+                candidates.visit(cu, p);
+                Set<String> convertible = candidates.solve();
+                if (convertible.isEmpty()) {
+                    return cu;
+                }
+                return (J.CompilationUnit) new ConvertToStatic(convertible).visitNonNull(cu, p);
+            }
+        };
+    }
+
+    /**
+     * Finds the private inner classes that never use the instance of an enclosing class. A class that creates other
+     * inner classes, extends one or is nested in one can only be made static if they are made static too.
+     */
+    private static class FindConvertibleClasses extends JavaIsoVisitor<ExecutionContext> {
+
+        private final Set<String> innerClasses;
+        private final Deque<EnclosingClass> enclosingClasses = new ArrayDeque<>();
+        private final Map<String, Set<String>> dependenciesByCandidate = new HashMap<>();
+        private final Set<String> createdFromExpressions = new HashSet<>();
+
+        FindConvertibleClasses(Set<String> innerClasses) {
+            this.innerClasses = innerClasses;
+        }
+
+        @Override
+        public J.ClassDeclaration visitClassDeclaration(J.ClassDeclaration classDecl, ExecutionContext p) {
+            String candidate = candidate(classDecl);
+
+            // static members may only be declared in classes that are static themselves
+            boolean isStatic = enclosingClasses.isEmpty() || classDecl.hasModifier(J.Modifier.Type.Static) ||
+                               classDecl.getKind() != J.ClassDeclaration.Kind.Type.Class;
+            Set<String> typeVariables = new HashSet<>(typeParameterNames(classDecl));
+            if (!isStatic) {
+                typeVariables.addAll(enclosingClasses.peek().typeVariables);
+            }
+            enclosingClasses.push(new EnclosingClass(isStatic, candidate, typeVariables));
+            J.ClassDeclaration c = super.visitClassDeclaration(classDecl, p);
+            enclosingClasses.pop();
+            return c;
+        }
+
+        @Override
+        public J.NewClass visitNewClass(J.NewClass newClass, ExecutionContext p) {
+            J.NewClass nc = super.visitNewClass(newClass, p);
+            JavaType.FullyQualified type = TypeUtils.asFullyQualified(nc.getType());
+            if (nc.getEnclosing() != null && type != null && !isVariable(nc.getEnclosing())) {
+                createdFromExpressions.add(type.getFullyQualifiedName());
+            }
+            return nc;
+        }
+
+        /**
+         * @return true for 'this', a variable or a field selected from one, which can be left out without side effects.
+         */
+        private static boolean isVariable(Expression expression) {
+            if (expression instanceof J.Identifier) {
+                return true;
+            }
+            return expression instanceof J.FieldAccess && isVariable(((J.FieldAccess) expression).getTarget());
+        }
+
+        /**
+         * @return The candidates whose dependencies are all made static, leaving classes that depend on each other in a
+         * cycle as they are.
+         */
+        Set<String> solve() {
+            Set<String> convertible = new HashSet<>();
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Map.Entry<String, Set<String>> candidate : dependenciesByCandidate.entrySet()) {
+                    if (!convertible.contains(candidate.getKey()) && !createdFromExpressions.contains(candidate.getKey()) &&
+                        convertible.containsAll(candidate.getValue())) {
+                        convertible.add(candidate.getKey());
+                        changed = true;
+                    }
+                }
+            }
+            return convertible;
+        }
+
+        /**
+         * @return The fully qualified name of the class if it doesn't use the instance of an enclosing class itself,
+         * and records the other inner classes it needs to be static to be made static.
+         */
+        @Nullable
+        private String candidate(J.ClassDeclaration classDecl) {
+            JavaType.FullyQualified type = classDecl.getType();
+            EnclosingClass enclosingClass = enclosingClasses.peek();
+            if (type == null || enclosingClass == null || !classDecl.hasModifier(J.Modifier.Type.Private) ||
+                classDecl.hasModifier(J.Modifier.Type.Static) || classDecl.getKind() != J.ClassDeclaration.Kind.Type.Class ||
+                (!enclosingClass.isStatic && enclosingClass.candidate == null)) {
+                return null;
+            }
+
+            // only members of a class, not local classes or members of anonymous classes or interfaces
+            Cursor body = getCursor().dropParentUntil(J.class::isInstance);
+            if (!(body.getValue() instanceof J.Block)) {
+                return null;
+            }
+            Object enclosing = body.dropParentUntil(J.class::isInstance).getValue();
+            if (!(enclosing instanceof J.ClassDeclaration) ||
+                ((J.ClassDeclaration) enclosing).getKind() == J.ClassDeclaration.Kind.Type.Interface ||
+                ((J.ClassDeclaration) enclosing).getKind() == J.ClassDeclaration.Kind.Type.Annotation) {
+                return null;
+            }
+
+            Set<String> dependencies = new HashSet<>();
+            if (!enclosingClass.isStatic) {
+                dependencies.add(enclosingClass.candidate);
+            }
+            TypeTree extendsClause = classDecl.getExtends();
+            if (extendsClause != null) {
+                if (!(extendsClause.getType() instanceof JavaType.FullyQualified)) {
+                    return null;
+                }
+                String superclass = ((JavaType.FullyQualified) extendsClause.getType()).getFullyQualifiedName();
+                if (innerClasses.contains(superclass)) {
+                    // another inner class can only be extended by a class with an enclosing instance
+                    dependencies.add(superclass);
+                }
+            }
+
+            // the type variables of enclosing classes are only in scope of inner classes
+            Set<String> typeVariables = new HashSet<>(enclosingClass.typeVariables);
+            typeVariables.removeAll(typeParameterNames(classDecl));
+            if (!typeVariables.isEmpty() &&
+                new FindTypeVariableUsages(typeVariables).reduce(classDecl, new AtomicBoolean()).get()) {
+                return null;
+            }
+
+            FindOuterInstanceUsages outerUsages = new FindOuterInstanceUsages(type, innerClasses);
+            if (outerUsages.reduce(classDecl.getBody(), new AtomicBoolean()).get()) {
+                return null;
+            }
+            dependencies.addAll(outerUsages.createdInnerClasses);
+            dependenciesByCandidate.put(type.getFullyQualifiedName(), dependencies);
+            return type.getFullyQualifiedName();
+        }
+    }
+
+    private static Set<String> typeParameterNames(J.ClassDeclaration classDecl) {
+        if (classDecl.getTypeParameters() == null) {
+            return emptySet();
+        }
+        Set<String> names = new HashSet<>();
+        for (J.TypeParameter typeParameter : classDecl.getTypeParameters()) {
+            if (typeParameter.getName() instanceof J.Identifier) {
+                names.add(((J.Identifier) typeParameter.getName()).getSimpleName());
+            }
+        }
+        return names;
+    }
+
+    @Value
+    private static class EnclosingClass {
+        boolean isStatic;
+
+        /**
+         * The enclosing class if it is an inner class that may be made static.
+         */
+        @Nullable
+        String candidate;
+
+        /**
+         * The type variables of this class and of the classes whose instance it is created with.
+         */
+        Set<String> typeVariables;
+    }
+
+    /**
+     * Searches the declaration of an inner class for the names of type variables of enclosing classes, which a static
+     * nested class can't refer to. A name that can't be resolved is taken to be one.
+     */
+    private static class FindTypeVariableUsages extends JavaIsoVisitor<AtomicBoolean> {
+
+        private final Set<String> typeVariables;
+
+        FindTypeVariableUsages(Set<String> typeVariables) {
+            this.typeVariables = typeVariables;
+        }
+
+        @Override
+        public J.Identifier visitIdentifier(J.Identifier identifier, AtomicBoolean usesTypeVariable) {
+            J.Identifier i = super.visitIdentifier(identifier, usesTypeVariable);
+            if (typeVariables.contains(i.getSimpleName()) &&
+                (i.getType() == null || i.getType() instanceof JavaType.GenericTypeVariable)) {
+                usesTypeVariable.set(true);
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Searches the body of an inner class for anything that needs the instance of an enclosing class. Anything that
+     * can't be resolved is taken to need it. Other inner classes created without an enclosing instance are collected
+     * instead, since they only need it for as long as they aren't static.
+     * <p>
+     * The inner class is to its enclosing instance what a local class is to the instance of the method declaring it,
+     * so every use is decided by the {@link InstanceAccessRules} for uses within a class body.
+     */
+    private static class FindOuterInstanceUsages extends JavaIsoVisitor<AtomicBoolean> {
+
+        private final JavaType.FullyQualified classType;
+        private final String className;
+        private final Set<String> hierarchy = new HashSet<>();
+
+        /**
+         * The types whose instance members an enclosing instance provides.
+         */
+        private final Set<String> outerHierarchy;
+
+        private final Set<String> innerClasses;
+
+        final Set<String> createdInnerClasses = new HashSet<>();
+
+        FindOuterInstanceUsages(JavaType.FullyQualified classType, Set<String> innerClasses) {
+            this.classType = classType;
+            this.className = classType.getFullyQualifiedName();
+            this.innerClasses = innerClasses;
+            InstanceAccessSummary.collectHierarchy(classType, hierarchy);
+            this.outerHierarchy = InstanceAccessSummary.enclosingHierarchy(classType.getOwningClass());
+        }
+
+        /**
+         * @return true if the type is the inner class or one of the classes nested in it, whose 'this' is not an
+         * enclosing instance.
+         */
+        private boolean isOwn(@Nullable JavaType type) {
+            JavaType.FullyQualified fullyQualified = TypeUtils.asFullyQualified(type);
+            return fullyQualified != null && (className.equals(fullyQualified.getFullyQualifiedName()) ||
+                                              fullyQualified.getFullyQualifiedName().startsWith(className + "$"));
+        }
+
+        /**
+         * @return true if an instance member of the type, used without a select, is one of an enclosing instance.
+         */
+        private boolean outerMember(@Nullable JavaType owner) {
+            JavaType.FullyQualified type = TypeUtils.asFullyQualified(owner);
+            if (type == null) {
+                return false;
+            }
+            String name = type.getFullyQualifiedName();
+            return InstanceAccessRules.outerMember(hierarchy.contains(name) || isOwn(type), outerHierarchy.contains(name));
+        }
+
+        @Override
+        public J.FieldAccess visitFieldAccess(J.FieldAccess fieldAccess, AtomicBoolean usesOuter) {
+            J.FieldAccess fa = super.visitFieldAccess(fieldAccess, usesOuter);
+            if ("this".equals(fa.getSimpleName()) || "super".equals(fa.getSimpleName())) {
+                // Node.this is the instance of the inner class itself, as 'this' is within a local class
+                Use use = isOwn(fa.getTarget().getType()) ? InstanceAccessRules.thisOrSuper(true, false, false, false) :
+                        InstanceAccessRules.qualifiedThisOrSuper();
+                if (use == Use.INSTANCE) {
+                    usesOuter.set(true);
+                }
+            }
+            return fa;
+        }
+
+        @Override
+        public J.Identifier visitIdentifier(J.Identifier identifier, AtomicBoolean usesOuter) {
+            J.Identifier i = super.visitIdentifier(identifier, usesOuter);
+            JavaType.Variable fieldType = i.getFieldType();
+            if (fieldType == null) {
+                return i;
+            }
+            Object parent = getCursor().dropParentUntil(J.class::isInstance).getValue();
+            if (parent instanceof J.FieldAccess && ((J.FieldAccess) parent).getName() == identifier &&
+                !isThisOrSuper(((J.FieldAccess) parent).getTarget())) {
+                // selected from another object, which is searched on its own
+                return i;
+            }
+            if (InstanceAccessRules.variable(fieldType.hasFlags(Flag.Static), false,
+                    fieldType.getOwner() instanceof JavaType.FullyQualified, true, outerMember(fieldType.getOwner())) == Use.INSTANCE) {
+                usesOuter.set(true);
+            }
+            return i;
+        }
+
+        @Override
+        public J.MethodInvocation visitMethodInvocation(J.MethodInvocation method, AtomicBoolean usesOuter) {
+            J.MethodInvocation mi = super.visitMethodInvocation(method, usesOuter);
+            if (mi.getSelect() != null) {
+                return mi;
+            }
+            JavaType.Method methodType = mi.getMethodType();
+            Use use = methodType == null ? InstanceAccessRules.call(false, false, false, true, false) :
+                    InstanceAccessRules.call(true, methodType.hasFlags(Flag.Static), false, true,
+                            outerMember(methodType.getDeclaringType()));
+            if (use == Use.INSTANCE) {
+                usesOuter.set(true);
+            }
+            return mi;
+        }
+
+        @Override
+        public J.NewClass visitNewClass(J.NewClass newClass, AtomicBoolean usesOuter) {
+            J.NewClass nc = super.visitNewClass(newClass, usesOuter);
+            JavaType.FullyQualified type = TypeUtils.asFullyQualified(nc.getType());
+            if (nc.getEnclosing() != null || type == null) {
+                return nc;
+            }
+            boolean innerClass = InstanceAccessSummary.isInnerClass(type);
+            // created with the enclosing instance if it is an inner class of an enclosing class
+            if (InstanceAccessRules.newInstance(innerClass,
+                    innerClass && InstanceAccessSummary.isOwnedByEnclosingClass(type, classType.getOwningClass())) == Use.INSTANCE) {
+                if (innerClasses.contains(type.getFullyQualifiedName())) {
+                    createdInnerClasses.add(type.getFullyQualifiedName());
+                } else {
+                    usesOuter.set(true);
+                }
+            }
+            return nc;
+        }
+
+        private static boolean isThisOrSuper(Expression target) {
+            return target instanceof J.Identifier &&
+                   ("this".equals(((J.Identifier) target).getSimpleName()) || "super".equals(((J.Identifier) target).getSimpleName()));
+        }
+    }
+
+    /**
+     * Adds the static modifier to the classes and creates them without an enclosing instance.
+     */
+    private static class ConvertToStatic extends JavaIsoVisitor<ExecutionContext> {
+
+        private final Set<String> classes;
+
+        ConvertToStatic(Set<String> classes) {
+            this.classes = classes;
+        }
+
+        @Override
+        public J.ClassDeclaration visitClassDeclaration(J.ClassDeclaration classDecl, ExecutionContext p) {
+            J.ClassDeclaration c = super.visitClassDeclaration(classDecl, p);
+            if (c.getType() == null || !classes.contains(c.getType().getFullyQualifiedName())) {
+                return c;
+            }
+
+            // right after 'private', as in 'private static final class'
+            List<J.Modifier> modifiers = new ArrayList<>(c.getModifiers());
+            for (int i = 0; i < modifiers.size(); i++) {
+                if (modifiers.get(i).getType() == J.Modifier.Type.Private) {
+                    modifiers.add(i + 1, new J.Modifier(Tree.randomId(), Space.format(" "), Markers.EMPTY,
+                            J.Modifier.Type.Static, emptyList()));
+                    break;
+                }
+            }
+            return c.withModifiers(modifiers);
+        }
+
+        @Override
+        public J.NewClass visitNewClass(J.NewClass newClass, ExecutionContext p) {
+            J.NewClass nc = super.visitNewClass(newClass, p);
+            JavaType type = nc.getType();
+            if (nc.getEnclosing() == null || nc.getClazz() == null || !(type instanceof JavaType.FullyQualified)) {
+                return nc;
+            }
+            String fullyQualifiedName = ((JavaType.FullyQualified) type).getFullyQualifiedName();
+            if (!classes.contains(fullyQualifiedName)) {
+                return nc;
+            }
+
+            // outer.new Inner() becomes new Outer.Inner()
+            String className = fullyQualifiedName.substring(fullyQualifiedName.lastIndexOf('.') + 1).replace('$', '.');
+            TypeTree clazz = TypeTree.build(className);
+            clazz = clazz.withType(type);
+            clazz = clazz.withPrefix(nc.getClazz().getPrefix());
+            return nc.withEnclosing(null).withClazz(clazz);
+        }
+    }
+}
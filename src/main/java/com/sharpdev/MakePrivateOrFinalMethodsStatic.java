@@ -15,31 +15,61 @@
  */
 package com.sharpdev;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import org.openrewrite.*;
 import org.openrewrite.internal.ListUtils;
 import org.openrewrite.internal.lang.Nullable;
 import org.openrewrite.java.JavaIsoVisitor;
-import org.openrewrite.java.tree.Flag;
+import org.openrewrite.java.tree.Expression;
 import org.openrewrite.java.tree.J;
 import org.openrewrite.java.tree.Space;
-import org.openrewrite.java.tree.J.FieldAccess;
-import org.openrewrite.java.tree.J.MethodInvocation;
-import org.openrewrite.java.tree.JavaType.Variable;
+import org.openrewrite.java.tree.JavaType;
+import org.openrewrite.java.tree.Statement;
+import org.openrewrite.java.tree.TypeTree;
 import org.openrewrite.marker.Markers;
 import org.openrewrite.scheduling.WatchableExecutionContext;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.nio.file.Paths;
+import java.util.*;
 
 import static java.util.Collections.emptyList;
 
 @Incubating(since = "7.0.0")
+@Value
+@EqualsAndHashCode(callSuper = true)
 public class MakePrivateOrFinalMethodsStatic extends Recipe {
 
+    @Option(displayName = "Without type attribution",
+            description = "Decide instance access from the fields, methods and local variables declared in each class " +
+                          "instead of from type attribution, so that sources can be parsed without their classpath. " +
+                          "Methods for which this can't be decided are left unchanged.",
+            required = false)
+    @Nullable
+    Boolean withoutTypeAttribution;
+
+    @Option(displayName = "Classes directory",
+            description = "Directory holding the compiled classes of the sources. When the class file of a class is " +
+                          "found there, its methods are checked from their bytecode instead of by searching their " +
+                          "bodies.",
+            example = "build/classes/java/main",
+            required = false)
+    @Nullable
+    String classesDirectory;
+
+    transient CapturingSitesRemoved capturingSitesRemoved = new CapturingSitesRemoved(this);
+
+    public MakePrivateOrFinalMethodsStatic() {
+        this(null, null);
+    }
+
+    @JsonCreator
+    public MakePrivateOrFinalMethodsStatic(@Nullable Boolean withoutTypeAttribution, @Nullable String classesDirectory) {
+        this.withoutTypeAttribution = withoutTypeAttribution;
+        this.classesDirectory = classesDirectory;
+    }
+
     @Override
     public String getDisplayName() {
         return "Try to make 'private' and 'final' methods static";
@@ -52,124 +82,471 @@ public class MakePrivateOrFinalMethodsStatic extends Recipe {
 
     @Override
     public JavaIsoVisitor<ExecutionContext> getVisitor() {
+        boolean declarationsOnly = Boolean.TRUE.equals(withoutTypeAttribution);
+        BytecodeStaticAnalysis bytecode = classesDirectory == null ? null : new BytecodeStaticAnalysis(Paths.get(classesDirectory));
         return new JavaIsoVisitor<ExecutionContext>() {
             @Override
             public @Nullable J visitSourceFile(SourceFile sourceFile, ExecutionContext p) {
                 SourceFile ss = (SourceFile) super.visitSourceFile(sourceFile, p);
+                AnalysisMetrics metrics = AnalysisMetrics.of(p);
 
-                SourceFile newSource = (SourceFile) new ApplyStaticIfApplicable().visitNonNull(ss, p);
-                WatchableExecutionContext ec = (WatchableExecutionContext) p;
-                while (ec.hasNewMessages()) {
-                    ec.resetHasNewMessages();
-                    newSource = (SourceFile) new ApplyStaticIfApplicable().visitNonNull(newSource, p);
-                    ec = (WatchableExecutionContext) p;
-                }           
+                if (declarationsOnly) {
+                    ApplyStaticIfApplicable applyStatic = new ApplyStaticIfApplicable();
+                    SourceFile newSource = (SourceFile) applyStatic.visitNonNull(ss, p);
+                    int passes = 1;
+                    WatchableExecutionContext ec = (WatchableExecutionContext) p;
+                    while (ec.hasNewMessages()) {
+                        ec.resetHasNewMessages();
+                        newSource = (SourceFile) applyStatic.visitNonNull(newSource, p);
+                        passes++;
+                        ec = (WatchableExecutionContext) p;
+                    }
+                    if (metrics != null) {
+                        metrics.recordSourceFile(passes, 0, 0, 0);
+                    }
+                    return (J) newSource;
+                }
 
+                // every method body is searched once, possibly by another recipe already, or not at all when javac left
+                // an InstanceAccessMarker on its method, and calls between methods of the same class are resolved
+                // afterwards, rather than searching every body again each time another method has been made static
+                if (!(ss instanceof J.CompilationUnit)) {
+                    return (J) ss;
+                }
+                InstanceAccessSummary summary = InstanceAccessSummary.of((J.CompilationUnit) ss, p);
+                FindStaticEligibleMethods eligibleMethods = new FindStaticEligibleMethods(bytecode, summary);
+                eligibleMethods.collect((J.CompilationUnit) ss);
+                Map<String, UUID> eligible = eligibleMethods.solve();
+
+                AddStaticModifier addStatic = new AddStaticModifier(new HashSet<>(eligible.values()), eligible.keySet(),
+                        eligibleMethods.plainBodies, summary, capturingSitesRemoved, SourceFileCost.normalize(ss.getSourcePath()));
+                SourceFile newSource = eligible.isEmpty() ? ss : (SourceFile) addStatic.visitNonNull(ss, p);
+                if (newSource != ss) {
+                    InstanceAccessSummary.forget((J.CompilationUnit) ss, p);
+                }
+                if (metrics != null) {
+                    metrics.recordSourceFile(1, summary.getNodesVisited() + eligibleMethods.nodesVisited + addStatic.nodesVisited,
+                            eligibleMethods.methodsAnalyzed, eligible.size());
+                }
                 return (J) newSource;
-            }    
+            }
         };
     }
 
-    @Value
-    @EqualsAndHashCode(callSuper = true)
-    private static class ApplyStaticIfApplicable extends JavaIsoVisitor<ExecutionContext> {
+    private static J.MethodDeclaration withStaticModifier(J.MethodDeclaration md) {
+        return md.withModifiers(
+                ListUtils.concat(md.getModifiers(), new J.Modifier(Tree.randomId(), Space.build(" ", emptyList()), Markers.EMPTY, J.Modifier.Type.Static, Collections.emptyList()))
+        );
+    }
 
-        private List<String> methodsToUpdateMeta = new ArrayList<>();
+    /**
+     * @return false for anonymous and local classes, and classes nested in them, whose binary names, such as
+     * {@code A$1} or {@code A$1Local}, can't be written in source to select a static method from.
+     */
+    private static boolean isNameable(JavaType.FullyQualified type) {
+        String fullyQualifiedName = type.getFullyQualifiedName();
+        for (String name : fullyQualifiedName.substring(fullyQualifiedName.lastIndexOf('.') + 1).split("\\$")) {
+            if (name.isEmpty() || Character.isDigit(name.charAt(0))) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        @Override
-        public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, ExecutionContext p) {
-            J.MethodDeclaration md = super.visitMethodDeclaration(method, p);
+    private static boolean isCandidate(J.MethodDeclaration md) {
+        // if this is not a private or final method, ignore
+        if (!md.hasModifier(J.Modifier.Type.Private) && !md.hasModifier(J.Modifier.Type.Final)) {
+            return false;
+        }
 
-            // if this is not a private or final method, ignore
-            if (!md.hasModifier(J.Modifier.Type.Private) && !md.hasModifier(J.Modifier.Type.Final)) {
-                return md;
+        // if this is already static or is a constructor, ignore
+        return !md.hasModifier(J.Modifier.Type.Static) && !md.isConstructor() && !isSerializationHook(md);
+    }
+
+    /**
+     * Serialization looks these methods up by name on the instance, so they must stay instance methods even when
+     * they don't use any instance data.
+     */
+    private static boolean isSerializationHook(J.MethodDeclaration md) {
+        int parameters = DeclaredSymbols.parameterCount(md);
+        switch (md.getSimpleName()) {
+            case "writeObject":
+            case "readObject":
+                return parameters == 1;
+            case "readObjectNoData":
+            case "writeReplace":
+            case "readResolve":
+                return parameters == 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Collects, for every candidate method, whether it accesses the instance directly and which methods of its own
+     * class it calls.
+     * <p>
+     * Walks the source file with an explicit work stack rather than by recursion, as {@link InstanceAccessSummary}
+     * does, and only walks the bodies of methods that may declare classes with methods of their own.
+     */
+    private static class FindStaticEligibleMethods {
+
+        @Nullable
+        private final BytecodeStaticAnalysis bytecode;
+
+        private final CompactCallGraph.Builder callGraph = new CompactCallGraph.Builder();
+
+        /**
+         * The declaration of every candidate, indexed by its id in the call graph.
+         */
+        private final List<UUID> candidateIds = new ArrayList<>();
+
+        /**
+         * The type of every candidate, indexed by its id in the call graph, to find the candidates called by the
+         * methods with an {@link InstanceAccessMarker}.
+         */
+        private final List<JavaType.Method> candidateTypes = new ArrayList<>();
+
+        /**
+         * Calls of the methods with an {@link InstanceAccessMarker}, from the caller's id in the call graph to the
+         * callees' keys in {@link InstanceAccessMarkers#key(String, String)}.
+         */
+        private final Map<Integer, Set<String>> markerCalls = new HashMap<>();
+
+        private final InstanceAccessSummary summary;
+
+        /**
+         * The methods whose bodies neither declare classes, call instance methods of their own class nor refer to
+         * {@code this}, so that {@link AddStaticModifier} finds nothing to rewrite within them.
+         */
+        final Set<UUID> plainBodies = new HashSet<>();
+
+        long nodesVisited;
+        long methodsAnalyzed;
+
+        FindStaticEligibleMethods(@Nullable BytecodeStaticAnalysis bytecode, InstanceAccessSummary summary) {
+            this.bytecode = bytecode;
+            this.summary = summary;
+        }
+
+        void collect(J.CompilationUnit cu) {
+            Deque<Object> work = new ArrayDeque<>();
+            InstanceAccessSummary.Children children = new InstanceAccessSummary.Children();
+            work.push(cu);
+            while (!work.isEmpty()) {
+                J j = (J) work.pop();
+                nodesVisited++;
+                if (j instanceof J.MethodDeclaration) {
+                    J.MethodDeclaration md = (J.MethodDeclaration) j;
+                    if (method(md) && md.getBody() != null) {
+                        work.push(md.getBody());
+                    }
+                } else if (j instanceof J.ClassDeclaration) {
+                    work.push(((J.ClassDeclaration) j).getBody());
+                } else if (j instanceof J.Block) {
+                    for (Statement statement : ((J.Block) j).getStatements()) {
+                        work.push(statement);
+                    }
+                } else if (j instanceof J.CompilationUnit) {
+                    for (J.ClassDeclaration classDecl : ((J.CompilationUnit) j).getClasses()) {
+                        work.push(classDecl);
+                    }
+                } else if (!(j instanceof J.Literal || j instanceof J.Identifier || j instanceof J.Import ||
+                             j instanceof J.Package || j instanceof J.Annotation)) {
+                    children.push(j, work);
+                }
             }
+        }
 
-            // if this is already static or is a constructor, ignore
-            if (md.hasModifier(J.Modifier.Type.Static) || md.isConstructor()) {
-                return md;
+        /**
+         * @return true if the body of the method may declare classes, and has to be walked for their methods.
+         */
+        private boolean method(J.MethodDeclaration md) {
+            // javac has already been through the body, which only needs to be walked for the methods of its classes
+            InstanceAccessMarker marker = md.getMarkers().findFirst(InstanceAccessMarker.class).orElse(null);
+            InstanceAccessSummary.MethodSummary access = marker != null || bytecode != null ? null : summary.get(md);
+            boolean declaresClasses = true;
+            if (marker != null) {
+                declaresClasses = marker.isDeclaresClasses();
+                // Outer.this.run() is rewritten too, and the marker doesn't tell it from other uses of the instance
+                if (!declaresClasses && marker.getCallees().isEmpty() && !marker.isAccessesInstanceDirectly()) {
+                    plainBodies.add(md.getId());
+                }
+            } else if (access != null) {
+                declaresClasses = access.isDeclaresClasses();
+                if (!declaresClasses && access.getCallees().isEmpty() && !access.isUsesThis()) {
+                    plainBodies.add(md.getId());
+                }
             }
+            if (isCandidate(md)) {
+                candidate(md, marker);
+            }
+            return declaresClasses;
+        }
 
-            J.ClassDeclaration classDecl = getCursor().dropParentUntil(parent -> parent instanceof J.ClassDeclaration).getValue();
+        private void candidate(J.MethodDeclaration md, @Nullable InstanceAccessMarker marker) {
+            methodsAnalyzed++;
+
+            JavaType.Method methodType = md.getMethodType();
+            int id = callGraph.method(methodType == null ? md.getId().toString() : summary.methodKey(methodType));
+            while (candidateIds.size() <= id) {
+                candidateIds.add(null);
+                candidateTypes.add(null);
+            }
+            candidateIds.set(id, md.getId());
+            candidateTypes.set(id, methodType);
 
-            AtomicBoolean foundInstanceAccess = FindInstanceUsagesWithinMethod.find(getCursor().getValue(), md.getBody(), classDecl, p);
-            if (!foundInstanceAccess.get()) {
-                md = md.withModifiers(
-                            ListUtils.concat(md.getModifiers(), new J.Modifier(Tree.randomId(), Space.build(" ", emptyList()), Markers.EMPTY, J.Modifier.Type.Static, Collections.emptyList()))
-                    );
+            if (methodType != null && methodType.getDeclaringType() != null && !isNameable(methodType.getDeclaringType())) {
+                // this::run and this.<T>run() would have to name the class once run() is static
+                return;
+            }
 
-                p.putMessage(md.getMethodType().toString(), true);
+            if (bytecode != null && methodType != null && methodType.getDeclaringType() != null) {
+                Set<String> eligible = bytecode.staticEligible(methodType.getDeclaringType().getFullyQualifiedName());
+                if (eligible != null) {
+                    // the class file already accounts for calls between methods
+                    if (eligible.contains(BytecodeStaticAnalysis.signature(methodType))) {
+                        callGraph.candidate(id);
+                    }
+                    return;
+                }
+            }
 
-                return md;
+            if (marker != null) {
+                if (!marker.isAccessesInstanceDirectly()) {
+                    callGraph.candidate(id);
+                    markerCalls.put(id, marker.getCallees());
+                }
+                return;
             }
 
-            return md;
-        }               
+            InstanceAccessSummary.MethodSummary access = summary.get(md);
+            if (access != null && !access.isAccessesInstanceDirectly()) {
+                callGraph.candidate(id);
+                for (String callee : access.getCallees()) {
+                    callGraph.call(id, callGraph.method(callee));
+                }
+            }
+        }
+
+        /**
+         * @return The keys, as in {@link InstanceAccessSummary#methodKey(JavaType.Method)}, of the candidates that
+         * don't access the instance directly and only call methods of their class that can be made static themselves.
+         * Methods calling each other in a cycle are left as they are.
+         */
+        Map<String, UUID> solve() {
+            if (!markerCalls.isEmpty()) {
+                // callees are only known by their marker key until now that every candidate has been seen
+                Map<String, Integer> candidatesByMarkerKey = new HashMap<>();
+                for (int id = 0; id < candidateTypes.size(); id++) {
+                    JavaType.Method methodType = candidateTypes.get(id);
+                    String markerKey = methodType == null ? null : InstanceAccessMarkers.key(methodType);
+                    if (markerKey != null) {
+                        candidatesByMarkerKey.put(markerKey, id);
+                    }
+                }
+                for (Map.Entry<Integer, Set<String>> calls : markerCalls.entrySet()) {
+                    for (String callee : calls.getValue()) {
+                        Integer calleeId = candidatesByMarkerKey.get(callee);
+                        callGraph.call(calls.getKey(), calleeId == null ? callGraph.method(callee) : calleeId);
+                    }
+                }
+            }
+
+            CompactCallGraph graph = callGraph.build();
+            BitSet eligible = graph.solve();
+            Map<String, UUID> eligibleByKey = new HashMap<>();
+            for (int id = eligible.nextSetBit(0); id >= 0; id = eligible.nextSetBit(id + 1)) {
+                eligibleByKey.put(graph.key(id), candidateIds.get(id));
+            }
+            return eligibleByKey;
+        }
     }
 
-    @Value
-    @EqualsAndHashCode(callSuper = true)
-    private static class FindInstanceUsagesWithinMethod extends JavaIsoVisitor<AtomicBoolean> {
+    /**
+     * Adds the static modifier, and calls the methods made static without {@code this}, so that lambdas, method
+     * references and anonymous classes that only captured {@code this} to call them no longer capture it.
+     */
+    private static class AddStaticModifier extends JavaIsoVisitor<ExecutionContext> {
 
-        J.Block block;
-        J.ClassDeclaration rootClass;
-        ExecutionContext p;
+        private final Set<UUID> methodIds;
+        private final Set<String> methodKeys;
 
         /**
-         * @param subtree   The subtree to search.
-         * @param block  A {@link J.Block} to check for instance access.
-         * @param rootClass  A {@link J.ClassDeclaration} root class to check if visited items belong.
-         * @return An {@link AtomicBoolean} that is true if instance access has been found.
+         * The methods with nothing to rewrite in their bodies, which aren't walked.
          */
-        static AtomicBoolean find(J subtree, J.Block block, J.ClassDeclaration rootClass, ExecutionContext p) {
-            return new FindInstanceUsagesWithinMethod(block, rootClass, p)
-                    .reduce(subtree, new AtomicBoolean());
+        private final Set<UUID> plainBodies;
+
+        private final InstanceAccessSummary summary;
+        private final CapturingSitesRemoved capturingSitesRemoved;
+        private final String sourcePath;
+
+        long nodesVisited;
+
+        AddStaticModifier(Set<UUID> methodIds, Set<String> methodKeys, Set<UUID> plainBodies,
+                          InstanceAccessSummary summary, CapturingSitesRemoved capturingSitesRemoved, String sourcePath) {
+            this.methodIds = methodIds;
+            this.methodKeys = methodKeys;
+            this.plainBodies = plainBodies;
+            this.summary = summary;
+            this.capturingSitesRemoved = capturingSitesRemoved;
+            this.sourcePath = sourcePath;
         }
 
         @Override
-        public FieldAccess visitFieldAccess(FieldAccess fieldAccess, AtomicBoolean hasInstanceAccess) {            
-            
-            FieldAccess fa = super.visitFieldAccess(fieldAccess, hasInstanceAccess);
-            
-            if (fa.getTarget() instanceof J.Identifier) {
-                J.Identifier identifier = (J.Identifier) fa.getTarget();
-                if (identifier.getFieldType() != null) {
-                    // if we have field access and target has fieldType, means we're accessing something from the instance
-                    hasInstanceAccess.set(true);
-                }
+        public J preVisit(J tree, ExecutionContext p) {
+            nodesVisited++;
+            return super.preVisit(tree, p);
+        }
+
+        @Override
+        public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, ExecutionContext p) {
+            J.MethodDeclaration md = plainBodies.contains(method.getId()) ? method : super.visitMethodDeclaration(method, p);
+            return methodIds.contains(md.getId()) ? withStaticModifier(md) : md;
+        }
+
+        @Override
+        public J.MethodInvocation visitMethodInvocation(J.MethodInvocation method, ExecutionContext p) {
+            J.MethodInvocation mi = super.visitMethodInvocation(method, p);
+            if (!isMadeStatic(mi.getMethodType())) {
+                return mi;
             }
-            
-            return fa;
+            Expression select = mi.getSelect();
+            if (isThis(select) && mi.getTypeParameters() != null && mi.getMethodType().getDeclaringType() != null) {
+                // this.<T>run() becomes Owner.<T>run(), since explicit type arguments need a select
+                return mi.withSelect(owner(mi.getMethodType().getDeclaringType(), select));
+            } else if (isThis(select)) {
+                // this.run() becomes run()
+                return mi.withSelect(null);
+            } else if (select instanceof J.FieldAccess && "this".equals(((J.FieldAccess) select).getSimpleName())) {
+                // Outer.this.run() becomes Outer.run()
+                return mi.withSelect(((J.FieldAccess) select).getTarget());
+            }
+            return mi;
         }
 
         @Override
-        public J.Identifier visitIdentifier(J.Identifier identifier, AtomicBoolean hasInstanceAccess) {
-            J.Identifier i = super.visitIdentifier(identifier, hasInstanceAccess);
+        public J.MemberReference visitMemberReference(J.MemberReference memberRef, ExecutionContext p) {
+            J.MemberReference mr = super.visitMemberReference(memberRef, p);
+            JavaType.Method methodType = mr.getMethodType();
+            if (!isThis(mr.getContaining()) || !isMadeStatic(methodType) || methodType.getDeclaringType() == null) {
+                return mr;
+            }
+
+            // this::run becomes Owner::run
+            capturingSiteRemoved("method reference", p);
+            return mr.withContaining(owner(methodType.getDeclaringType(), mr.getContaining()));
+        }
 
-            Variable fieldType = i.getFieldType();
-            if (fieldType != null && rootClass.getType().equals(i.getFieldType().getOwner()) && !fieldType.hasFlags(Flag.Static)) {                
-                hasInstanceAccess.set(true);
+        @Override
+        public J.Lambda visitLambda(J.Lambda lambda, ExecutionContext p) {
+            J.Lambda l = super.visitLambda(lambda, p);
+            InstanceAccessSummary.MethodSummary access = summary.get(lambda);
+            if (access != null && access.usesInstance() && !access.isAccessesInstanceDirectly() &&
+                methodKeys.containsAll(access.getCallees())) {
+                capturingSiteRemoved("lambda", p);
             }
-            return i;
-        }     
+            return l;
+        }
 
         @Override
-        public MethodInvocation visitMethodInvocation(MethodInvocation method, AtomicBoolean hasInstanceAccess) {
-            // if instance access has been found already, return immediately
-            if (hasInstanceAccess.get()) {
-                return method;
+        public J.NewClass visitNewClass(J.NewClass newClass, ExecutionContext p) {
+            J.NewClass nc = super.visitNewClass(newClass, p);
+            J.MethodDeclaration enclosingMethod = getCursor().firstEnclosing(J.MethodDeclaration.class);
+            if (nc.getBody() != null && enclosingMethod != null && methodIds.contains(enclosingMethod.getId())) {
+                // an anonymous class created in an instance method always captures the instance
+                capturingSiteRemoved("anonymous class", p);
             }
+            return nc;
+        }
 
-            MethodInvocation mi = super.visitMethodInvocation(method, hasInstanceAccess);
-            //if method was changed to static already, we can ignore it when checking here
-            Object isTargetStatic = p.getMessage(mi.getMethodType().toString());
+        /**
+         * @return The class declaring a method, named as it is within that class, in place of the expression.
+         */
+        private static TypeTree owner(JavaType.FullyQualified declaringType, Expression replaced) {
+            // only methods of classes that can be named are made static
+            String fullyQualifiedName = declaringType.getFullyQualifiedName();
+            TypeTree owner = TypeTree.build(fullyQualifiedName.substring(fullyQualifiedName.lastIndexOf('.') + 1).replace('$', '.'));
+            owner = owner.withType(declaringType);
+            return owner.withPrefix(replaced.getPrefix());
+        }
 
-            if (!mi.getMethodType().hasFlags(Flag.Static) && rootClass.getType().equals(mi.getMethodType().getDeclaringType())
-                && isTargetStatic == null) {
-                hasInstanceAccess.set(true);
+        private boolean isMadeStatic(@Nullable JavaType.Method methodType) {
+            return methodType != null && methodKeys.contains(summary.methodKey(methodType));
+        }
+
+        private static boolean isThis(@Nullable Expression expression) {
+            return expression instanceof J.Identifier && "this".equals(((J.Identifier) expression).getSimpleName());
+        }
+
+        private void capturingSiteRemoved(String kind, ExecutionContext p) {
+            J.MethodDeclaration enclosingMethod = getCursor().firstEnclosing(J.MethodDeclaration.class);
+            capturingSitesRemoved.insertRow(p, new CapturingSitesRemoved.Row(sourcePath, kind,
+                    enclosingMethod == null ? "" : enclosingMethod.getSimpleName()));
+        }
+    }
+
+    private static class ApplyStaticIfApplicable extends JavaIsoVisitor<ExecutionContext> {
+
+        /**
+         * The declarations of every class, collected once per pass rather than once per method.
+         */
+        private final Map<J.ClassDeclaration, DeclaredSymbols> symbolsByClass = new IdentityHashMap<>();
+
+        @Override
+        public J.CompilationUnit visitCompilationUnit(J.CompilationUnit cu, ExecutionContext p) {
+            // classes changed by the previous pass are new instances
+            symbolsByClass.clear();
+            return super.visitCompilationUnit(cu, p);
+        }
+
+        @Override
+        public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, ExecutionContext p) {
+            J.MethodDeclaration md = super.visitMethodDeclaration(method, p);
+
+            if (!isCandidate(md)) {
+                return md;
             }
 
-            return mi;
+            Cursor classCursor = getCursor().dropParentUntil(parent -> parent instanceof J.ClassDeclaration || parent instanceof J.NewClass);
+            if (!(classCursor.getValue() instanceof J.ClassDeclaration)) {
+                // members of an anonymous class can't be told apart from those of the class around it
+                return md;
+            }
+
+            J.ClassDeclaration classDecl = classCursor.getValue();
+            DeclaredSymbols symbols = symbolsByClass.get(classDecl);
+            if (symbols == null) {
+                symbols = DeclaredSymbols.of(classDecl, isInnerClass(classCursor));
+                for (Iterator<Object> path = classCursor.getParentOrThrow().getPath(); path.hasNext(); ) {
+                    Object enclosing = path.next();
+                    if (enclosing instanceof J.ClassDeclaration) {
+                        symbols.addInnerClasses((J.ClassDeclaration) enclosing);
+                    }
+                }
+                symbolsByClass.put(classDecl, symbols);
+            }
+            if (FindInstanceUsagesByDeclarations.find(getCursor().getValue(), symbols, p) == FindInstanceUsagesByDeclarations.InstanceAccess.NONE) {
+                DeclaredSymbols.markConverted(getCursor().getValue(), p);
+                return withStaticModifier(md);
+            }
+            return md;
+        }
+
+        private static boolean isInnerClass(Cursor classCursor) {
+            J.ClassDeclaration classDecl = classCursor.getValue();
+            if (classDecl.hasModifier(J.Modifier.Type.Static) || classDecl.getKind() != J.ClassDeclaration.Kind.Type.Class) {
+                return false;
+            }
+            Object enclosing = classCursor.getParentOrThrow().dropParentUntil(parent -> parent instanceof J.ClassDeclaration ||
+                                                                                      parent instanceof J.NewClass ||
+                                                                                      parent instanceof J.MethodDeclaration ||
+                                                                                      parent instanceof SourceFile).getValue();
+            if (enclosing instanceof SourceFile) {
+                return false;
+            }
+            return !(enclosing instanceof J.ClassDeclaration) ||
+                   ((J.ClassDeclaration) enclosing).getKind() != J.ClassDeclaration.Kind.Type.Interface;
         }
-    }    
-}
\ No newline at end of file
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.internal.lang.Nullable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the files a run has processed on top of the {@link AnalysisMetrics} of the recipe, and publishes them as
+ * {@value #OBJECT_NAME} on the platform MBean server while the run lasts.
+ * <p>
+ * Workers only ever add to striped counters and to a histogram of per-file latencies, so that processing files in
+ * parallel doesn't serialize on the progress. Latencies are bucketed with eight buckets per power of two, which is
+ * enough to tell the 99th percentile within an eighth.
+ */
+public class RecipeProgress implements RecipeProgressMXBean, AutoCloseable {
+
+    public static final String OBJECT_NAME = "com.sharpdev:type=RecipeProgress";
+
+    private static final int EXACT_BUCKETS = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = EXACT_BUCKETS + (63 - 4) * SUB_BUCKETS;
+
+    private final AnalysisMetrics metrics = new AnalysisMetrics();
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder filesProcessed = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+
+    /**
+     * Counts of per-file latencies in microseconds, by {@link #bucket(long)}.
+     */
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+    private volatile String currentFile = "";
+
+    @Nullable
+    private ObjectName registeredAs;
+
+    /**
+     * @return A progress registered on the platform MBean server, replacing that of an earlier run in the same JVM.
+     * It is unregistered when closed.
+     */
+    public static RecipeProgress register() {
+        RecipeProgress progress = new RecipeProgress();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(progress, name);
+            progress.registeredAs = name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register " + OBJECT_NAME, e);
+        }
+        return progress;
+    }
+
+    /**
+     * Lets the recipe count what it analyzes in a file processed with {@code ctx}.
+     */
+    public void attachTo(ExecutionContext ctx) {
+        metrics.attachTo(ctx);
+    }
+
+    public void started(Path source) {
+        currentFile = SourceFileCost.normalize(source);
+    }
+
+    public void finished(long elapsedNanos) {
+        filesProcessed.increment();
+        latencyNanos.add(elapsedNanos);
+        latencies.incrementAndGet(bucket(elapsedNanos / 1000));
+    }
+
+    @Override
+    public long getFilesProcessed() {
+        return filesProcessed.sum();
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        return getFilesProcessed() / Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    @Override
+    public long getMethodsAnalyzed() {
+        return metrics.getMethodsAnalyzed();
+    }
+
+    @Override
+    public long getMethodsConverted() {
+        return metrics.getMethodsMadeStatic();
+    }
+
+    @Override
+    public String getCurrentFile() {
+        return currentFile;
+    }
+
+    @Override
+    public double getAverageFileLatencyMillis() {
+        long files = getFilesProcessed();
+        return files == 0 ? 0 : latencyNanos.sum() / 1e6 / files;
+    }
+
+    @Override
+    public double getP99FileLatencyMillis() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencies.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * 0.99);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i) / 1e3;
+            }
+        }
+        return upperBound(BUCKETS - 1) / 1e3;
+    }
+
+    @Override
+    public double getPassesPerFile() {
+        long sourceFiles = metrics.getSourceFiles();
+        return sourceFiles == 0 ? 0 : (double) metrics.getPasses() / sourceFiles;
+    }
+
+    @Override
+    public void close() {
+        if (registeredAs != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredAs);
+            } catch (JMException e) {
+                throw new IllegalStateException("Unable to unregister " + OBJECT_NAME, e);
+            }
+            registeredAs = null;
+        }
+    }
+
+    /**
+     * @return The bucket of a latency: values below 16 have a bucket each, larger ones share one with the values
+     * that have the same highest bit and the same three bits below it.
+     */
+    static int bucket(long micros) {
+        if (micros < EXACT_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (highestBit - 3)) & (SUB_BUCKETS - 1);
+        return EXACT_BUCKETS + (highestBit - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The largest latency, in microseconds, that falls in a bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < EXACT_BUCKETS) {
+            return bucket;
+        }
+        int highestBit = (bucket - EXACT_BUCKETS) / SUB_BUCKETS + 4;
+        int subBucket = (bucket - EXACT_BUCKETS) % SUB_BUCKETS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << (highestBit - 3);
+        return lowerBound + (1L << (highestBit - 3)) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+/**
+ * The progress of a {@link RecipeRunner} run, as seen from JMX clients such as JConsole.
+ *
+ * @see RecipeProgress
+ */
+public interface RecipeProgressMXBean {
+
+    long getFilesProcessed();
+
+    /**
+     * @return The files processed per second since the run started.
+     */
+    double getFilesPerSecond();
+
+    long getMethodsAnalyzed();
+
+    long getMethodsConverted();
+
+    /**
+     * @return The file processed last started, or an empty string before the first.
+     */
+    String getCurrentFile();
+
+    double getAverageFileLatencyMillis();
+
+    /**
+     * @return The 99th percentile of the time to parse and process a file, rounded up to the bucket it falls in,
+     * which is within an eighth of it.
+     */
+    double getP99FileLatencyMillis();
+
+    /**
+     * @return The average number of times every file was visited to analyze its methods.
+     */
+    double getPassesPerFile();
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Recipe;
+import org.openrewrite.RecipeRun;
+import org.openrewrite.internal.ListUtils;
+import org.openrewrite.internal.lang.Nullable;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line entry point that runs {@link MakePrivateOrFinalMethodsStatic} over a source tree.
+ * <p>
+ * Every file is parsed on its own against the supplied classpath, so the outcome for a file does not depend on which
+ * other files were parsed with it. This is what allows a tree to be split with {@code --shard i/n}, processed by
+ * separate JVMs, and combined again with {@code --merge} into the same result a single run produces.
+ * <pre>
+ *   RecipeRunner --root src/main/java --classpath build/classes/java/main --shard 0/4 --out shard-0.bin
+ *   RecipeRunner --merge shard-0.bin shard-1.bin shard-2.bin shard-3.bin --out all.bin
+ * </pre>
+ * Without {@code --out}, the combined patch is written to standard output. The errors reported for a file are kept
+ * with its outcome, and those of every file that failed are written to standard error.
+ * <p>
+ * With {@code --lst-cache dir}, the parsed sources are kept in {@code dir} and reused by later runs for as long as
+ * neither the sources nor the classpath change (see {@link LstCache}).
+ * <p>
+ * {@code --threads n} processes {@code n} files at a time, the most expensive first (see {@link CostAwareScheduler}).
+ * Their cost is estimated from their size, or from how long they took in an earlier run when {@code --timings file}
+ * is given, which also records the timings of this run in {@code file}.
+ * <p>
+ * While files are processed, their progress is published over JMX as {@value RecipeProgress#OBJECT_NAME}.
+ * <p>
+ * With {@code --instance-access dir}, methods are checked from what the {@code InstanceAccess} javac plugin wrote to
+ * {@code dir} while the sources were compiled, instead of by searching their bodies (see {@link InstanceAccessMarkers}).
+ * <p>
+ * {@code --estimate n} runs the recipe on a sample of about {@code n} files instead, and prints the runtime and the
+ * number of methods made static it extrapolates for the whole tree (see {@link RunEstimate}). {@code --seed} changes
+ * the sample.
+ */
+public class RecipeRunner {
+
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(".");
+        List<Path> classpath = Collections.emptyList();
+        int shardIndex = 0;
+        int shardCount = 1;
+        Path out = null;
+        List<Path> merge = null;
+        int estimateSample = 0;
+        long seed = 0;
+        Path lstCache = null;
+        int threads = 1;
+        Path timingsFile = null;
+        Path instanceAccess = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--root":
+                    root = Paths.get(args[++i]);
+                    break;
+                case "--classpath":
+                    classpath = new ArrayList<>();
+                    for (String entry : args[++i].split(File.pathSeparator)) {
+                        if (!entry.isEmpty()) {
+                            classpath.add(Paths.get(entry));
+                        }
+                    }
+                    break;
+                case "--shard":
+                    String[] shard = args[++i].split("/");
+                    shardIndex = Integer.parseInt(shard[0]);
+                    shardCount = Integer.parseInt(shard[1]);
+                    break;
+                case "--out":
+                    out = Paths.get(args[++i]);
+                    break;
+                case "--merge":
+                    merge = new ArrayList<>();
+                    while (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        merge.add(Paths.get(args[++i]));
+                    }
+                    break;
+                case "--estimate":
+                    estimateSample = Integer.parseInt(args[++i]);
+                    break;
+                case "--lst-cache":
+                    lstCache = Paths.get(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--timings":
+                    timingsFile = Paths.get(args[++i]);
+                    break;
+                case "--instance-access":
+                    instanceAccess = Paths.get(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        if (estimateSample > 0) {
+            List<SourceFileCost> files = SourceFileCost.scan(root);
+            System.out.print(RunEstimate.estimate(root, files, classpath, estimateSample, seed).report());
+            System.out.flush();
+            return;
+        }
+
+        ShardResult result;
+        if (merge != null) {
+            List<ShardResult> shards = new ArrayList<>(merge.size());
+            for (Path shard : merge) {
+                shards.add(ShardResult.read(shard));
+            }
+            result = ShardResult.merge(shards);
+        } else {
+            List<Path> sources = SourceFileShards.shard(SourceFileCost.scan(root), shardIndex, shardCount);
+            FileTimings timings = timingsFile == null ? new FileTimings() : FileTimings.read(timingsFile);
+            try (RecipeProgress progress = RecipeProgress.register()) {
+                result = run(root, sources, classpath, progress,
+                        lstCache == null ? null : new LstCache(lstCache, classpath), threads, timings, instanceAccess);
+            }
+            if (timingsFile != null) {
+                timings.write(timingsFile);
+            }
+        }
+
+        for (Map.Entry<String, List<String>> failed : result.failures().entrySet()) {
+            System.err.println("Failed to process " + failed.getKey() + ":");
+            for (String failure : failed.getValue()) {
+                System.err.print(failure);
+            }
+        }
+
+        if (out != null) {
+            result.write(out);
+        } else {
+            System.out.print(result.patch());
+            System.out.flush();
+        }
+    }
+
+    /**
+     * @param root      The root of the source tree.
+     * @param sources   The source files to process, relative to {@code root}.
+     * @param classpath The classpath used to attribute types.
+     * @return The outcome of the recipe for each of {@code sources}.
+     */
+    public static ShardResult run(Path root, List<Path> sources, List<Path> classpath) {
+        try (RecipeProgress progress = RecipeProgress.register()) {
+            return run(root, sources, classpath, progress);
+        }
+    }
+
+    /**
+     * @param progress Where every processed file is counted.
+     */
+    public static ShardResult run(Path root, List<Path> sources, List<Path> classpath, RecipeProgress progress) {
+        return run(root, sources, classpath, progress, null, 1, new FileTimings(), null);
+    }
+
+    /**
+     * @param lstCache Where the LSTs of the sources are kept between runs, or null to parse every source.
+     * @param threads  The number of files processed at the same time.
+     * @param timings  The timings of an earlier run, used to process the most expensive files first, and where the
+     *                 timings of this run are recorded.
+     * @param instanceAccess The directory the {@code InstanceAccess} javac plugin wrote to while compiling the sources,
+     *                       or null to search the body of every method.
+     */
+    public static ShardResult run(Path root, List<Path> sources, List<Path> classpath, RecipeProgress progress,
+                                  @Nullable LstCache lstCache, int threads, FileTimings timings,
+                                  @Nullable Path instanceAccess) {
+        // parsers keep state between files, so every worker has its own
+        ThreadLocal<JavaParser> parsers = ThreadLocal.withInitial(() -> parser(classpath));
+        Recipe recipe = new MakePrivateOrFinalMethodsStatic();
+
+        ShardResult result = new ShardResult();
+        CostAwareScheduler.run(timings.costs(root, sources), SourceFileCost::getCost, threads, file -> {
+            Path source = file.getPath();
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            ExecutionContext ctx = new InMemoryExecutionContext(failures::add);
+            progress.attachTo(ctx);
+            progress.started(source);
+            long start = System.nanoTime();
+            RecipeRun run = null;
+            try {
+                run = run(parsers.get(), recipe, root, source, ctx, lstCache, instanceAccess);
+            } catch (RuntimeException e) {
+                // one file that can't be processed doesn't stop the others
+                failures.add(e);
+            }
+            long elapsed = System.nanoTime() - start;
+            progress.finished(elapsed);
+            timings.record(source, elapsed);
+            synchronized (result) {
+                result.add(source, run, failures);
+            }
+        });
+        return result;
+    }
+
+    static JavaParser parser(List<Path> classpath) {
+        return JavaParser.fromJavaVersion()
+                .classpath(classpath)
+                .logCompilationWarningsAndErrors(false)
+                .build();
+    }
+
+    /**
+     * Parses one source file on its own and runs the recipe on it.
+     */
+    static RecipeRun run(JavaParser parser, Recipe recipe, Path root, Path source, ExecutionContext ctx) {
+        return run(parser, recipe, root, source, ctx, null, null);
+    }
+
+    static RecipeRun run(JavaParser parser, Recipe recipe, Path root, Path source, ExecutionContext ctx,
+                         @Nullable LstCache lstCache, @Nullable Path instanceAccess) {
+        List<J.CompilationUnit> cus = lstCache == null ?
+                parse(parser, root, source, ctx) :
+                lstCache.load(root, source, () -> parse(parser, root, source, ctx), ctx);
+        if (instanceAccess != null) {
+            // attached after loading, so that cached LSTs are not tied to one compilation
+            cus = ListUtils.map(cus, cu -> InstanceAccessMarkers.attach(instanceAccess, cu));
+        }
+        return recipe.run(cus, ctx);
+    }
+
+    private static List<J.CompilationUnit> parse(JavaParser parser, Path root, Path source, ExecutionContext ctx) {
+        parser.reset();
+        return parser.parse(Collections.singletonList(root.resolve(source)), root, ctx);
+    }
+}
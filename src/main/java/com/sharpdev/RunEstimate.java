@@ -0,0 +1,305 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import lombok.Value;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Recipe;
+import org.openrewrite.RecipeRun;
+import org.openrewrite.Result;
+import org.openrewrite.internal.lang.Nullable;
+import org.openrewrite.java.JavaParser;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * How long a full run of {@link MakePrivateOrFinalMethodsStatic} over a source tree will take and how many methods it
+ * will make static, extrapolated from running it on a sample of the files.
+ * <p>
+ * Files are grouped into strata by module and size class, and every stratum is sampled in proportion to its number
+ * of files, but with at least two files so that its variance can be estimated. The sampled files are parsed and run
+ * exactly as {@link RecipeRunner} does, and the totals are estimated stratum by stratum with 95% confidence
+ * intervals. Times are measured in this JVM after a single warm-up file, so they lean towards the high side.
+ * <p>
+ * The errors reported for a sampled file are kept with the estimate, since the totals extrapolate from whatever a
+ * file that failed got through.
+ */
+@Value
+public class RunEstimate {
+
+    private static final double Z_95 = 1.96;
+
+    /**
+     * Upper bounds, in bytes, of the size classes files are grouped by. Larger files form the last class.
+     */
+    private static final long[] SIZE_CLASSES = {2 * 1024, 8 * 1024, 32 * 1024};
+
+    int totalFiles;
+    int sampledFiles;
+    int strata;
+
+    Interval runtimeMillis;
+    Interval methodsAnalyzed;
+    Interval methodsMadeStatic;
+
+    /**
+     * The peak heap use while the sample was run, plus the estimated size of the patches a full run keeps until it
+     * is done. Every file is parsed on its own, so the peak doesn't otherwise grow with the number of files.
+     */
+    long peakHeapBytes;
+
+    /**
+     * The errors reported for every sampled file that failed, by normalized path, as
+     * {@link ShardResult#describe(Throwable)} gives them.
+     */
+    SortedMap<String, List<String>> failures;
+
+    @Value
+    public static class Interval {
+        double estimate;
+        double low;
+        double high;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.0f (95%% CI %.0f to %.0f)", estimate, low, high);
+        }
+    }
+
+    /**
+     * @param root       The root of the source tree.
+     * @param files      The source files of the tree, relative to {@code root}.
+     * @param classpath  The classpath used to attribute types.
+     * @param sampleSize The number of files to sample, exceeded when two files of every stratum add up to more.
+     * @param seed       The seed of the random sample.
+     */
+    public static RunEstimate estimate(Path root, List<SourceFileCost> files, List<Path> classpath, int sampleSize,
+                                       long seed) {
+        Map<String, List<SourceFileCost>> strata = strata(files);
+        Map<String, List<SourceFileCost>> sample = sample(strata, sampleSize, new Random(seed));
+
+        JavaParser parser = RecipeRunner.parser(classpath);
+        Recipe recipe = new MakePrivateOrFinalMethodsStatic();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+
+        // the first file loads and compiles most of what the others use, so it is run once more before measuring
+        for (List<SourceFileCost> stratum : sample.values()) {
+            if (!stratum.isEmpty()) {
+                run(parser, recipe, root, stratum.get(0));
+                break;
+            }
+        }
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+
+        Map<String, Integer> populations = new HashMap<>();
+        Map<String, double[]> millis = new HashMap<>();
+        Map<String, double[]> analyzed = new HashMap<>();
+        Map<String, double[]> madeStatic = new HashMap<>();
+        Map<String, double[]> patchBytes = new HashMap<>();
+        SortedMap<String, List<String>> failures = new TreeMap<>();
+        int sampledFiles = 0;
+        for (Map.Entry<String, List<SourceFileCost>> stratum : sample.entrySet()) {
+            int n = stratum.getValue().size();
+            populations.put(stratum.getKey(), strata.get(stratum.getKey()).size());
+            double[] stratumMillis = new double[n];
+            double[] stratumAnalyzed = new double[n];
+            double[] stratumMadeStatic = new double[n];
+            double[] stratumPatchBytes = new double[n];
+            for (int i = 0; i < n; i++) {
+                SourceFileCost file = stratum.getValue().get(i);
+                AnalysisMetrics metrics = new AnalysisMetrics();
+                List<Throwable> fileFailures = new ArrayList<>();
+                long start = System.nanoTime();
+                RecipeRun run = run(parser, recipe, root, file, metrics, fileFailures);
+                stratumMillis[i] = (System.nanoTime() - start) / 1e6;
+                stratumAnalyzed[i] = metrics.getMethodsAnalyzed();
+                stratumMadeStatic[i] = metrics.getMethodsMadeStatic();
+                if (run != null) {
+                    for (Result result : run.getResults()) {
+                        // two bytes per char of the patch kept in memory
+                        stratumPatchBytes[i] += 2.0 * result.diff().length();
+                    }
+                }
+                if (!fileFailures.isEmpty()) {
+                    List<String> described = new ArrayList<>(fileFailures.size());
+                    for (Throwable failure : fileFailures) {
+                        described.add(ShardResult.describe(failure));
+                    }
+                    failures.put(file.normalizedPath(), described);
+                }
+            }
+            millis.put(stratum.getKey(), stratumMillis);
+            analyzed.put(stratum.getKey(), stratumAnalyzed);
+            madeStatic.put(stratum.getKey(), stratumMadeStatic);
+            patchBytes.put(stratum.getKey(), stratumPatchBytes);
+            sampledFiles += n;
+        }
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        return new RunEstimate(files.size(), sampledFiles, strata.size(),
+                total(populations, millis), total(populations, analyzed), total(populations, madeStatic),
+                peakHeap + (long) total(populations, patchBytes).getEstimate(), failures);
+    }
+
+    private static void run(JavaParser parser, Recipe recipe, Path root, SourceFileCost file) {
+        // failures of the warm-up are those of a file that is run again
+        run(parser, recipe, root, file, new AnalysisMetrics(), new ArrayList<>());
+    }
+
+    /**
+     * @param failures Where the errors reported for the file are added.
+     * @return The run of the recipe on the file, or null if it failed before there was one.
+     */
+    @Nullable
+    private static RecipeRun run(JavaParser parser, Recipe recipe, Path root, SourceFileCost file,
+                                 AnalysisMetrics metrics, List<Throwable> failures) {
+        ExecutionContext ctx = new InMemoryExecutionContext(failures::add);
+        metrics.attachTo(ctx);
+        try {
+            return RecipeRunner.run(parser, recipe, root, file.getPath(), ctx);
+        } catch (RuntimeException e) {
+            failures.add(e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The files grouped by module and size class, in a deterministic order.
+     */
+    static SortedMap<String, List<SourceFileCost>> strata(List<SourceFileCost> files) {
+        SortedMap<String, List<SourceFileCost>> strata = new TreeMap<>();
+        for (SourceFileCost file : files) {
+            strata.computeIfAbsent(module(file.normalizedPath()) + " #" + sizeClass(file.getSize()),
+                    key -> new ArrayList<>()).add(file);
+        }
+        for (List<SourceFileCost> stratum : strata.values()) {
+            stratum.sort(Comparator.comparing(SourceFileCost::normalizedPath));
+        }
+        return strata;
+    }
+
+    /**
+     * @return The part of the path before its {@code src/} directory, or its first directory when it has none.
+     */
+    static String module(String normalizedPath) {
+        int src = normalizedPath.startsWith("src/") ? 0 : normalizedPath.indexOf("/src/");
+        if (src >= 0) {
+            return normalizedPath.substring(0, src);
+        }
+        int slash = normalizedPath.indexOf('/');
+        return slash < 0 ? "" : normalizedPath.substring(0, slash);
+    }
+
+    private static int sizeClass(long size) {
+        int sizeClass = 0;
+        while (sizeClass < SIZE_CLASSES.length && size >= SIZE_CLASSES[sizeClass]) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    /**
+     * Samples every stratum in proportion to its share of the files, with at least two files per stratum.
+     */
+    static SortedMap<String, List<SourceFileCost>> sample(Map<String, List<SourceFileCost>> strata, int sampleSize,
+                                                          Random random) {
+        int total = 0;
+        for (List<SourceFileCost> stratum : strata.values()) {
+            total += stratum.size();
+        }
+
+        SortedMap<String, List<SourceFileCost>> sample = new TreeMap<>();
+        for (Map.Entry<String, List<SourceFileCost>> stratum : strata.entrySet()) {
+            int size = stratum.getValue().size();
+            int n = (int) Math.round((double) sampleSize * size / total);
+            n = Math.min(size, Math.max(Math.min(2, size), n));
+            List<SourceFileCost> shuffled = new ArrayList<>(stratum.getValue());
+            Collections.shuffle(shuffled, random);
+            sample.put(stratum.getKey(), new ArrayList<>(shuffled.subList(0, n)));
+        }
+        return sample;
+    }
+
+    /**
+     * The stratified estimate of a total, with the finite population correction for strata that were sampled in
+     * large part.
+     *
+     * @param populations  The number of files of every stratum.
+     * @param observations The value observed for every sampled file of every stratum.
+     */
+    static Interval total(Map<String, Integer> populations, Map<String, double[]> observations) {
+        double total = 0;
+        double variance = 0;
+        for (Map.Entry<String, double[]> stratum : observations.entrySet()) {
+            double[] values = stratum.getValue();
+            int n = values.length;
+            if (n == 0) {
+                continue;
+            }
+            int size = populations.get(stratum.getKey());
+
+            double mean = 0;
+            for (double value : values) {
+                mean += value;
+            }
+            mean /= n;
+            total += size * mean;
+
+            if (n > 1) {
+                double squares = 0;
+                for (double value : values) {
+                    squares += (value - mean) * (value - mean);
+                }
+                double sampleVariance = squares / (n - 1);
+                variance += (double) size * size * (1 - (double) n / size) * sampleVariance / n;
+            }
+        }
+        double margin = Z_95 * Math.sqrt(variance);
+        return new Interval(total, Math.max(0, total - margin), total + margin);
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Sampled %d of %d files in %d strata%n" +
+                "Runtime (ms, one thread): %s%n" +
+                "Methods analyzed:         %s%n" +
+                "Methods made static:      %s%n" +
+                "Peak heap (MiB):          %d%n" +
+                "Failed sampled files:     %d%n",
+                sampledFiles, totalFiles, strata, runtimeMillis, methodsAnalyzed, methodsMadeStatic,
+                peakHeapBytes / (1024 * 1024), failures.size()));
+        for (String path : failures.keySet()) {
+            report.append("  ").append(path).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+}
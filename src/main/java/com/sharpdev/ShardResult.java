@@ -0,0 +1,319 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import lombok.Value;
+import org.openrewrite.DataTable;
+import org.openrewrite.RecipeRun;
+import org.openrewrite.Result;
+import org.openrewrite.internal.lang.Nullable;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The patches, data table rows and failures produced for a set of source files, keyed by the normalized path of each
+ * file.
+ * <p>
+ * Results are always kept in path order, so merging the results of every shard yields exactly the result of running
+ * all files in one process.
+ * <p>
+ * The columns of a data table row are the fields of its class in the order of their names, which doesn't depend on
+ * the order reflection happens to list them in, and their names are kept with the rows, so that a reader can map
+ * the columns by name.
+ */
+public class ShardResult {
+
+    private static final int MAGIC = 0x52533235;
+    private static final int FORMAT = 2;
+
+    private final SortedMap<String, FileOutcome> files = new TreeMap<>();
+
+    @Value
+    public static class FileOutcome {
+        String patch;
+
+        /**
+         * Column names by data table name.
+         */
+        SortedMap<String, List<String>> columns;
+
+        /**
+         * Rows by data table name, each row being the string form of the columns named by {@link #getColumns()}.
+         */
+        SortedMap<String, List<List<String>>> rows;
+
+        /**
+         * The errors reported while the file was processed, as {@link #describe(Throwable)} gives them. The patch and
+         * rows of a file that failed may be incomplete.
+         */
+        List<String> failures;
+    }
+
+    /**
+     * @param run      The run of the recipe on the file, or null if it failed before there was one.
+     * @param failures The errors reported while the file was processed.
+     */
+    public void add(Path path, @Nullable RecipeRun run, List<Throwable> failures) {
+        List<String> described = new ArrayList<>(failures.size());
+        for (Throwable failure : failures) {
+            described.add(describe(failure));
+        }
+        if (run == null) {
+            add(SourceFileCost.normalize(path), new FileOutcome("", new TreeMap<>(), new TreeMap<>(), described));
+            return;
+        }
+
+        StringBuilder patch = new StringBuilder();
+        for (Result result : run.getResults()) {
+            patch.append(result.diff());
+        }
+
+        SortedMap<String, List<String>> columns = new TreeMap<>();
+        SortedMap<String, List<List<String>>> rows = new TreeMap<>();
+        for (Map.Entry<DataTable<?>, List<?>> table : run.getDataTables().entrySet()) {
+            List<Field> fields = null;
+            List<List<String>> tableRows = new ArrayList<>(table.getValue().size());
+            for (Object row : table.getValue()) {
+                if (fields == null) {
+                    fields = columnFields(row.getClass());
+                    List<String> names = new ArrayList<>(fields.size());
+                    for (Field field : fields) {
+                        names.add(field.getName());
+                    }
+                    columns.put(table.getKey().getName(), names);
+                }
+                tableRows.add(columns(row, fields));
+            }
+            rows.put(table.getKey().getName(), tableRows);
+        }
+
+        add(SourceFileCost.normalize(path), new FileOutcome(patch.toString(), columns, rows, described));
+    }
+
+    void add(String normalizedPath, FileOutcome outcome) {
+        if (files.putIfAbsent(normalizedPath, outcome) != null) {
+            throw new IllegalStateException("Source file " + normalizedPath + " was processed by more than one shard");
+        }
+    }
+
+    public SortedMap<String, FileOutcome> getFiles() {
+        return Collections.unmodifiableSortedMap(files);
+    }
+
+    /**
+     * @return The errors reported for every file that failed, in path order.
+     */
+    public SortedMap<String, List<String>> failures() {
+        SortedMap<String, List<String>> failures = new TreeMap<>();
+        for (Map.Entry<String, FileOutcome> file : files.entrySet()) {
+            if (!file.getValue().getFailures().isEmpty()) {
+                failures.put(file.getKey(), file.getValue().getFailures());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return The patches of every file that changed, concatenated in path order.
+     */
+    public String patch() {
+        StringBuilder patch = new StringBuilder();
+        for (FileOutcome outcome : files.values()) {
+            patch.append(outcome.getPatch());
+        }
+        return patch.toString();
+    }
+
+    /**
+     * @return The column names of the named data table, empty if no file has a row in it.
+     */
+    public List<String> columns(String dataTableName) {
+        List<String> columns = null;
+        for (Map.Entry<String, FileOutcome> file : files.entrySet()) {
+            List<String> fileColumns = file.getValue().getColumns().get(dataTableName);
+            if (fileColumns == null) {
+                continue;
+            }
+            if (columns == null) {
+                columns = fileColumns;
+            } else if (!columns.equals(fileColumns)) {
+                throw new IllegalStateException("Rows of " + dataTableName + " of " + file.getKey() + " have columns " +
+                                                fileColumns + " rather than " + columns);
+            }
+        }
+        return columns == null ? Collections.emptyList() : columns;
+    }
+
+    /**
+     * @return The rows of the named data table over every file, in path order, with the columns named by
+     * {@link #columns(String)}.
+     */
+    public List<List<String>> rows(String dataTableName) {
+        List<List<String>> rows = new ArrayList<>();
+        for (FileOutcome outcome : files.values()) {
+            List<List<String>> fileRows = outcome.getRows().get(dataTableName);
+            if (fileRows != null) {
+                rows.addAll(fileRows);
+            }
+        }
+        return rows;
+    }
+
+    public static ShardResult merge(Collection<ShardResult> shards) {
+        ShardResult merged = new ShardResult();
+        for (ShardResult shard : shards) {
+            for (Map.Entry<String, FileOutcome> file : shard.files.entrySet()) {
+                merged.add(file.getKey(), file.getValue());
+            }
+        }
+        return merged;
+    }
+
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(files.size());
+            for (Map.Entry<String, FileOutcome> file : files.entrySet()) {
+                writeString(out, file.getKey());
+                writeString(out, file.getValue().getPatch());
+                out.writeInt(file.getValue().getRows().size());
+                for (Map.Entry<String, List<List<String>>> table : file.getValue().getRows().entrySet()) {
+                    writeString(out, table.getKey());
+                    List<String> columns = file.getValue().getColumns().getOrDefault(table.getKey(), Collections.emptyList());
+                    out.writeInt(columns.size());
+                    for (String column : columns) {
+                        writeString(out, column);
+                    }
+                    out.writeInt(table.getValue().size());
+                    for (List<String> row : table.getValue()) {
+                        out.writeInt(row.size());
+                        for (String column : row) {
+                            writeString(out, column);
+                        }
+                    }
+                }
+                out.writeInt(file.getValue().getFailures().size());
+                for (String failure : file.getValue().getFailures()) {
+                    writeString(out, failure);
+                }
+            }
+        }
+    }
+
+    public static ShardResult read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a shard result");
+            }
+            if (in.readInt() != FORMAT) {
+                throw new IOException(path + " was written by another version");
+            }
+            ShardResult result = new ShardResult();
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                String sourcePath = readString(in);
+                String patch = readString(in);
+                SortedMap<String, List<String>> columns = new TreeMap<>();
+                SortedMap<String, List<List<String>>> rows = new TreeMap<>();
+                int tableCount = in.readInt();
+                for (int t = 0; t < tableCount; t++) {
+                    String table = readString(in);
+                    int columnNameCount = in.readInt();
+                    if (columnNameCount > 0) {
+                        List<String> names = new ArrayList<>(columnNameCount);
+                        for (int c = 0; c < columnNameCount; c++) {
+                            names.add(readString(in));
+                        }
+                        columns.put(table, names);
+                    }
+                    int rowCount = in.readInt();
+                    List<List<String>> tableRows = new ArrayList<>(rowCount);
+                    for (int r = 0; r < rowCount; r++) {
+                        int columnCount = in.readInt();
+                        List<String> row = new ArrayList<>(columnCount);
+                        for (int c = 0; c < columnCount; c++) {
+                            row.add(readString(in));
+                        }
+                        tableRows.add(row);
+                    }
+                    rows.put(table, tableRows);
+                }
+                int failureCount = in.readInt();
+                List<String> failures = new ArrayList<>(failureCount);
+                for (int f = 0; f < failureCount; f++) {
+                    failures.add(readString(in));
+                }
+                result.add(sourcePath, new FileOutcome(patch, columns, rows, failures));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return The fields of a row class, in the order of their names.
+     */
+    private static List<Field> columnFields(Class<?> rowClass) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : rowClass.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        fields.sort(Comparator.comparing(Field::getName));
+        return fields;
+    }
+
+    private static List<String> columns(Object row, List<Field> fields) {
+        List<String> columns = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            try {
+                columns.add(String.valueOf(field.get(row)));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Unable to read column " + field.getName() + " of " + row, e);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @return The stack trace of the error, which names the exception and its causes.
+     */
+    static String describe(Throwable failure) {
+        StringWriter stackTrace = new StringWriter();
+        failure.printStackTrace(new PrintWriter(stackTrace));
+        return stackTrace.toString();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A Java source file of a source tree together with the estimated cost of running the recipe on it.
+ */
+@Value
+public class SourceFileCost {
+
+    /**
+     * Path of the source file, relative to the root of the source tree.
+     */
+    Path path;
+
+    long size;
+
+    long cost;
+
+    /**
+     * @param root The root directory of the source tree.
+     * @return Every {@code .java} file below {@code root}, with its size used as the estimated cost.
+     */
+    public static List<SourceFileCost> scan(Path root) {
+        try (Stream<Path> walk = Files.walk(root)) {
+            List<Path> sources = walk
+                    .filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().endsWith(".java"))
+                    .collect(Collectors.toList());
+            List<SourceFileCost> costs = new ArrayList<>(sources.size());
+            for (Path source : sources) {
+                long size = Files.size(source);
+                costs.add(new SourceFileCost(root.relativize(source), size, size));
+            }
+            return costs;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The path with '/' separators, so it compares and hashes the same on every platform.
+     */
+    public String normalizedPath() {
+        return normalize(path);
+    }
+
+    static String normalize(Path path) {
+        return path.toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Splits a source tree into shards that can be processed by independent processes.
+ * <p>
+ * The partition only depends on the relative path and the cost of each file, never on the order in which files
+ * were discovered or on the JVM doing the work, so every process computes the same assignment on its own.
+ */
+public final class SourceFileShards {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SourceFileShards() {
+    }
+
+    /**
+     * Assigns files greedily, most expensive first, to the shard with the lowest total cost so far.
+     *
+     * @param files      The files to distribute.
+     * @param shardCount The number of shards.
+     * @return For every shard, the paths assigned to it in normalized path order.
+     */
+    public static List<List<Path>> partition(List<SourceFileCost> files, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive, got " + shardCount);
+        }
+
+        List<SourceFileCost> ordered = new ArrayList<>(files);
+        ordered.sort(Comparator.comparingLong(SourceFileCost::getCost).reversed()
+                .thenComparingLong(f -> stableHash(f.normalizedPath()))
+                .thenComparing(SourceFileCost::normalizedPath));
+
+        long[] load = new long[shardCount];
+        List<List<SourceFileCost>> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (SourceFileCost file : ordered) {
+            int target = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (load[i] < load[target]) {
+                    target = i;
+                }
+            }
+            shards.get(target).add(file);
+            load[target] += Math.max(1, file.getCost());
+        }
+
+        List<List<Path>> paths = new ArrayList<>(shardCount);
+        for (List<SourceFileCost> shard : shards) {
+            shard.sort(Comparator.comparing(SourceFileCost::normalizedPath));
+            List<Path> shardPaths = new ArrayList<>(shard.size());
+            for (SourceFileCost file : shard) {
+                shardPaths.add(file.getPath());
+            }
+            paths.add(shardPaths);
+        }
+        return paths;
+    }
+
+    /**
+     * @return The paths assigned to shard {@code shardIndex} out of {@code shardCount}.
+     */
+    public static List<Path> shard(List<SourceFileCost> files, int shardIndex, int shardCount) {
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Shard index " + shardIndex + " is out of range for " + shardCount + " shards");
+        }
+        return partition(files, shardCount).get(shardIndex);
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes of the path, used to break ties between files of equal cost so that files from
+     * the same directory do not all land on the same shard.
+     */
+    static long stableHash(String normalizedPath) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : normalizedPath.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactCallGraphTest {
+
+    @Test
+    void chainOfCandidatesIsEligible() {
+        CompactCallGraph.Builder builder = new CompactCallGraph.Builder();
+        int a = candidate(builder, "a");
+        int b = candidate(builder, "b");
+        int c = candidate(builder, "c");
+        builder.call(a, b);
+        builder.call(a, b);
+        builder.call(b, c);
+
+        assertThat(eligible(builder.build())).containsExactlyInAnyOrder("a", "b", "c");
+    }
+
+    @Test
+    void callingInstanceMethodBlocksEveryCaller() {
+        CompactCallGraph.Builder builder = new CompactCallGraph.Builder();
+        int a = candidate(builder, "a");
+        int b = candidate(builder, "b");
+        int c = candidate(builder, "c");
+        builder.call(a, b);
+        builder.call(b, builder.method("instance"));
+        builder.call(c, a);
+        int d = candidate(builder, "d");
+
+        assertThat(eligible(builder.build())).containsExactly("d");
+    }
+
+    @Test
+    void cyclesAreNotEligible() {
+        CompactCallGraph.Builder builder = new CompactCallGraph.Builder();
+        int a = candidate(builder, "a");
+        int b = candidate(builder, "b");
+        int self = candidate(builder, "self");
+        int c = candidate(builder, "c");
+        builder.call(a, b);
+        builder.call(b, a);
+        builder.call(self, self);
+        builder.call(c, builder.method("a"));
+
+        assertThat(eligible(builder.build())).isEmpty();
+    }
+
+    private static int candidate(CompactCallGraph.Builder builder, String key) {
+        int id = builder.method(key);
+        builder.candidate(id);
+        return id;
+    }
+
+    private static Set<String> eligible(CompactCallGraph graph) {
+        Set<String> keys = new HashSet<>();
+        BitSet eligible = graph.solve();
+        for (int id = eligible.nextSetBit(0); id >= 0; id = eligible.nextSetBit(id + 1)) {
+            keys.add(graph.key(id));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CostAwareSchedulerTest {
+
+    @Test
+    void mostExpensiveTasksComeFirst() {
+        List<ConcurrentLinkedDeque<Integer>> queues = CostAwareScheduler.assign(
+                Arrays.asList(1, 10, 3, 8, 2, 7), Integer::longValue, 2);
+
+        assertThat(queues.get(0)).containsExactly(10, 3, 2, 1);
+        assertThat(queues.get(1)).containsExactly(8, 7);
+    }
+
+    @Test
+    void everyTaskRunsOnce() {
+        List<Integer> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tasks.add(i);
+        }
+        Queue<Integer> done = new ConcurrentLinkedQueue<>();
+
+        CostAwareScheduler.run(tasks, i -> i % 17, 4, done::add);
+
+        assertThat(done).containsExactlyInAnyOrderElementsOf(tasks);
+    }
+
+    @Test
+    void idleWorkersStealTasksWhenEstimatesAreWrong() {
+        // estimated equal, but task 0 doesn't finish before every other task has, including those dealt to its worker
+        CountDownLatch others = new CountDownLatch(5);
+        CostAwareScheduler.run(Arrays.asList(0, 1, 2, 3, 4, 5), i -> 1, 2, i -> {
+            if (i == 0) {
+                try {
+                    assertThat(others.await(1, TimeUnit.MINUTES)).isTrue();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                others.countDown();
+            }
+        });
+    }
+
+    @Test
+    void failureIsRethrown() {
+        assertThatThrownBy(() -> CostAwareScheduler.run(Arrays.asList(1, 2, 3), i -> i, 2, i -> {
+            if (i == 2) {
+                throw new IllegalArgumentException("task " + i);
+            }
+        })).isInstanceOf(IllegalArgumentException.class).hasMessage("task 2");
+    }
+}
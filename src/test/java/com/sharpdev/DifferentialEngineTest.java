@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Recipe;
+import org.openrewrite.RecipeRun;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Runs every engine of {@link MakePrivateOrFinalMethodsStatic} on random classes and checks that they all rewrite
+ * them the same way as the engine searching method bodies, which is the reference. A class the engines disagree on is
+ * shrunk before it is reported, together with the seed that generated it.
+ * <p>
+ * Where a class uses a {@link RandomClasses.Form form} an engine is known to decide more conservatively than the
+ * reference, that engine may leave more methods alone, but it must never make a method static that the reference
+ * doesn't: class files see a method reference to {@code this} and a class declared in a method as an escape of
+ * {@code this}, and declarations don't resolve calls through {@code this}, method references or class bodies.
+ * <p>
+ * The seed is fixed so that every run checks the same classes; other classes can be explored by setting the
+ * {@code rspec2325.differential.seed} system property, and their number with {@code rspec2325.differential.classes}.
+ */
+class DifferentialEngineTest {
+
+    private static final long SEED = Long.getLong("rspec2325.differential.seed", 2325);
+    private static final int CLASSES = Integer.getInteger("rspec2325.differential.classes", 50);
+
+    private static final Set<RandomClasses.Form> CLASS_FILE_DIFFERENCES =
+            EnumSet.of(RandomClasses.Form.METHOD_REFERENCE, RandomClasses.Form.CLASS_BODY);
+    private static final Set<RandomClasses.Form> DECLARATION_DIFFERENCES = EnumSet.allOf(RandomClasses.Form.class);
+
+    private static final Pattern STATIC_METHOD = Pattern.compile("static int (\\w+)\\(([^)]*)\\)");
+
+    @TempDir
+    Path work;
+
+    private int compilations;
+
+    @Test
+    void enginesAgreeWithReference() {
+        Random random = new Random(SEED);
+        int compiled = 0;
+        Map<RandomClasses.Form, Integer> forms = new EnumMap<>(RandomClasses.Form.class);
+        for (int i = 0; i < CLASSES; i++) {
+            RandomClasses.Program program = RandomClasses.generate(random);
+            if (compile(program.source()) == null) {
+                continue;
+            }
+            compiled++;
+            for (RandomClasses.Form form : RandomClasses.Form.values()) {
+                if (program.uses(form)) {
+                    forms.merge(form, 1, Integer::sum);
+                }
+            }
+            String disagreement = disagreement(program);
+            if (disagreement != null) {
+                RandomClasses.Program smallest = program.shrink(p -> disagreement(p) != null);
+                fail("Engines disagree on class %d generated with seed %d (-Drspec2325.differential.seed=%d).%n" +
+                     "Shrunk class:%n%s%n%s", i, SEED, SEED, smallest.source(), disagreement(smallest));
+            }
+        }
+        // otherwise a generator that stopped producing valid classes would leave nothing tested
+        assertThat(compiled)
+                .as("generated classes that compile, with seed %d", SEED)
+                .isGreaterThanOrEqualTo(CLASSES * 9 / 10);
+        assertThat(forms)
+                .as("classes using each form the engines are known to differ on, with seed %d", SEED)
+                .containsOnlyKeys(RandomClasses.Form.values());
+    }
+
+    /**
+     * @return A description of how an engine rewrote the program differently from the reference, or null if they all
+     * agree or the program doesn't compile, as when shrinking removed something it needs.
+     */
+    private String disagreement(RandomClasses.Program program) {
+        String source = program.source();
+        Path classes = compile(source);
+        if (classes == null) {
+            return null;
+        }
+
+        String reference = rewrite(new MakePrivateOrFinalMethodsStatic(), source);
+        String bytecode = rewrite(new MakePrivateOrFinalMethodsStatic(null, classes.toString()), source);
+        if (!agrees(program, CLASS_FILE_DIFFERENCES, reference, bytecode)) {
+            return describe("class files", reference, bytecode);
+        }
+        if (program.resolvableFromDeclarations()) {
+            String declarations = rewrite(new MakePrivateOrFinalMethodsStatic(true, null), source);
+            if (!agrees(program, DECLARATION_DIFFERENCES, reference, declarations)) {
+                return describe("declarations", reference, declarations);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether an engine rewrote the program the same way as the reference or, if the program uses a form
+     * the engine is known to differ on, made no method static that the reference doesn't.
+     */
+    private static boolean agrees(RandomClasses.Program program, Set<RandomClasses.Form> knownDifferences,
+                                  String reference, String actual) {
+        if (reference.equals(actual)) {
+            return true;
+        }
+        for (RandomClasses.Form form : knownDifferences) {
+            if (program.uses(form)) {
+                return staticMethods(reference).containsAll(staticMethods(actual));
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> staticMethods(String source) {
+        Set<String> methods = new TreeSet<>();
+        Matcher matcher = STATIC_METHOD.matcher(source);
+        while (matcher.find()) {
+            methods.add(matcher.group(1) + "(" + matcher.group(2) + ")");
+        }
+        return methods;
+    }
+
+    private static String describe(String engine, String reference, String actual) {
+        return "Reference rewrite:\n" + reference + "\nRewrite from " + engine + ":\n" + actual;
+    }
+
+    private static String rewrite(Recipe recipe, String source) {
+        InMemoryExecutionContext ctx = new InMemoryExecutionContext(t -> fail("Recipe failed", t));
+        List<J.CompilationUnit> cus = JavaParser.fromJavaVersion().build().parse(ctx, source);
+        RecipeRun run = recipe.run(cus, ctx);
+        return run.getResults().isEmpty() ? source : run.getResults().get(0).getAfter().printAll();
+    }
+
+    /**
+     * @return The directory holding the class files, or null if the source doesn't compile.
+     */
+    private Path compile(String source) {
+        try {
+            Path classes = Files.createDirectories(work.resolve("classes" + compilations++));
+            Path sourceFile = classes.resolve("A.java");
+            Files.write(sourceFile, source.getBytes());
+            int status = ToolProvider.getSystemJavaCompiler().run(null, null, new ByteArrayOutputStream(),
+                    "-d", classes.toString(), sourceFile.toString());
+            return status == 0 ? classes : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import java.util.function.IntFunction;
+
+/**
+ * Generates classes that grow along one dimension at a time.
+ */
+enum GeneratedClasses {
+
+    /**
+     * Independent methods, a third of which read an instance field.
+     */
+    METHODS(n -> {
+        StringBuilder source = new StringBuilder("class Generated {\n    int field;\n    static int counter;\n");
+        for (int i = 0; i < n; i++) {
+            source.append("    private int m").append(i).append("() {\n")
+                    .append(i % 3 == 0 ? "        return field;\n" : "        return counter + " + i + ";\n")
+                    .append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }),
+
+    /**
+     * A chain of calls in which only the last method is declared last, so that each method can only be made static
+     * once every method after it is.
+     */
+    CHAIN_DEPTH(n -> {
+        StringBuilder source = new StringBuilder("class Generated {\n");
+        for (int i = 0; i < n; i++) {
+            source.append("    private int m").append(i).append("() {\n")
+                    .append(i + 1 < n ? "        return m" + (i + 1) + "() + 1;\n" : "        return 0;\n")
+                    .append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }),
+
+    /**
+     * Static nested classes nested inside each other, each with a method calling one of the class it is nested in.
+     */
+    NESTED_CLASSES(n -> {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            String indent = "    ".repeat(i);
+            source.append(indent).append(i == 0 ? "class N0 {\n" : "static class N" + i + " {\n")
+                    .append(indent).append("    static int counter;\n")
+                    .append(indent).append("    private int m() {\n")
+                    .append(indent).append(i == 0 ? "        return counter;\n" : "        return counter + N" + (i - 1) + ".counter;\n")
+                    .append(indent).append("    }\n");
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            source.append("    ".repeat(i)).append("}\n");
+        }
+        return source.toString();
+    }),
+
+    /**
+     * A single method whose body grows.
+     */
+    BODY_SIZE(n -> {
+        StringBuilder source = new StringBuilder("class Generated {\n    static int counter;\n    private int m() {\n        int x = 0;\n");
+        for (int i = 0; i < n; i++) {
+            source.append("        x += counter * ").append(i).append(";\n");
+        }
+        return source.append("        return x;\n    }\n}\n").toString();
+    });
+
+    private final IntFunction<String> generator;
+
+    GeneratedClasses(IntFunction<String> generator) {
+        this.generator = generator;
+    }
+
+    String source(int size) {
+        return generator.apply(size);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.java.JavaIsoVisitor;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.JavaType;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstanceAccessMarkersTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pluginAgreesWithSummary() throws Exception {
+        Random random = new Random(2325);
+        List<String> sources = new ArrayList<>();
+        sources.add("""
+                import java.util.List;
+                class A {
+                    int x;
+                    private int field() {
+                        return x;
+                    }
+                    private int call() {
+                        return field();
+                    }
+                    private Runnable reference() {
+                        return this::call;
+                    }
+                    private int qualified() {
+                        return this.call() + this.x;
+                    }
+                    private int other(A a) {
+                        return a.x + a.field();
+                    }
+                    private int overload(int i, String... s) {
+                        return i;
+                    }
+                    private <T extends Number> int overload(T t, List<? extends T> ts) {
+                        return overload(t.intValue());
+                    }
+                    class Inner {
+                        private int outer() {
+                            return x;
+                        }
+                    }
+                }
+                """);
+        for (int i = 0; i < 20; i++) {
+            sources.add(RandomClasses.generate(random).source());
+        }
+
+        for (int i = 0; i < sources.size(); i++) {
+            String source = sources.get(i);
+            Path instanceAccess = compile(dir.resolve(Integer.toString(i)), source);
+            J.CompilationUnit cu = InstanceAccessMarkers.attach(instanceAccess, parse(source));
+            InstanceAccessSummary summary = InstanceAccessSummary.withVisitor(cu);
+
+            Map<String, String> markerKeys = new HashMap<>();
+            List<J.MethodDeclaration> methods = new ArrayList<>();
+            new JavaIsoVisitor<Integer>() {
+                @Override
+                public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, Integer p) {
+                    JavaType.Method methodType = method.getMethodType();
+                    if (methodType != null) {
+                        markerKeys.put(summary.methodKey(methodType), InstanceAccessMarkers.key(methodType));
+                    }
+                    methods.add(method);
+                    return super.visitMethodDeclaration(method, p);
+                }
+            }.visit(cu, 0);
+
+            int marked = 0;
+            for (J.MethodDeclaration method : methods) {
+                InstanceAccessMarker marker = method.getMarkers().findFirst(InstanceAccessMarker.class).orElse(null);
+                InstanceAccessSummary.MethodSummary access = summary.get(method);
+                if (marker == null || access == null) {
+                    continue;
+                }
+                marked++;
+                Set<String> callees = new HashSet<>();
+                for (String callee : access.getCallees()) {
+                    callees.add(markerKeys.get(callee));
+                }
+                assertThat(marker.isAccessesInstanceDirectly()).as(source).isEqualTo(access.isAccessesInstanceDirectly());
+                assertThat(marker.getCallees()).as(source).isEqualTo(callees);
+            }
+            assertThat(marked).as(source).isPositive();
+        }
+    }
+
+    @Test
+    void recipeTakesInstanceAccessFromMarkers() throws Exception {
+        String source = """
+                class A {
+                    int x;
+                    private int field() {
+                        return x;
+                    }
+                    private int call() {
+                        return field();
+                    }
+                }
+                """;
+        // claims field() doesn't use its instance, which only the marker and not the body can have told the recipe
+        Path instanceAccess = Files.createDirectories(dir.resolve("instance-access"));
+        Files.write(InstanceAccessMarkers.file(instanceAccess, "A"), Arrays.asList(
+                InstanceAccessMarkers.sourceHash(source),
+                InstanceAccessMarkers.line("A#field()", false, Collections.emptySet(), false),
+                InstanceAccessMarkers.line("A#call()", false, Collections.singleton("A#field()"), false)));
+        J.CompilationUnit cu = InstanceAccessMarkers.attach(instanceAccess, parse(source));
+
+        String after = new MakePrivateOrFinalMethodsStatic().run(Collections.singletonList(cu), new InMemoryExecutionContext())
+                .getResults().get(0).getAfter().printAll();
+
+        assertThat(after).contains("private static int field()", "private static int call()");
+    }
+
+    @Test
+    void methodsWithoutMarkersAreSearched() throws Exception {
+        String source = """
+                class A {
+                    int x;
+                    private int field() {
+                        return x;
+                    }
+                    private int call() {
+                        return field();
+                    }
+                    private int twice(int a) {
+                        return a * 2;
+                    }
+                }
+                """;
+        Path instanceAccess = Files.createDirectories(dir.resolve("instance-access"));
+        Files.write(InstanceAccessMarkers.file(instanceAccess, "A"), Arrays.asList(
+                InstanceAccessMarkers.sourceHash(source),
+                InstanceAccessMarkers.line("A#call()", false, Collections.singleton("A#field()"), false)));
+        J.CompilationUnit cu = InstanceAccessMarkers.attach(instanceAccess, parse(source));
+
+        String after = new MakePrivateOrFinalMethodsStatic().run(Collections.singletonList(cu), new InMemoryExecutionContext())
+                .getResults().get(0).getAfter().printAll();
+
+        assertThat(after).contains("private int field()", "private int call()", "private static int twice(int a)");
+    }
+
+    @Test
+    void filesOfAnotherSourceAreIgnored() throws Exception {
+        String source = """
+                class A {
+                    int x;
+                    private int field() {
+                        return x;
+                    }
+                }
+                """;
+        // written before field() started to use its instance
+        Path instanceAccess = Files.createDirectories(dir.resolve("instance-access"));
+        Files.write(InstanceAccessMarkers.file(instanceAccess, "A"), Arrays.asList(
+                InstanceAccessMarkers.sourceHash(source.replace("return x;", "return 0;")),
+                InstanceAccessMarkers.line("A#field()", false, Collections.emptySet(), false)));
+        J.CompilationUnit cu = InstanceAccessMarkers.attach(instanceAccess, parse(source));
+
+        assertThat(cu.getClasses().get(0).getBody().getStatements().get(1).getMarkers()
+                .findFirst(InstanceAccessMarker.class)).isEmpty();
+    }
+
+    /**
+     * @return The directory the plugin wrote to while compiling the source.
+     */
+    private static Path compile(Path dir, String source) throws Exception {
+        Path sourceFile = Files.createDirectories(dir.resolve("src")).resolve("A.java");
+        Files.write(sourceFile, source.getBytes());
+        Path classes = Files.createDirectories(dir.resolve("classes"));
+        Path instanceAccess = dir.resolve("instance-access");
+
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int exit = javac.run(null, null, err,
+                "-classpath", System.getProperty("java.class.path"),
+                "-Xplugin:InstanceAccess " + instanceAccess,
+                "-d", classes.toString(),
+                sourceFile.toString());
+        assertThat(exit).as(err.toString()).isZero();
+        return instanceAccess;
+    }
+
+    private static J.CompilationUnit parse(String source) {
+        return JavaParser.fromJavaVersion().build().parse(new InMemoryExecutionContext(), source).get(0);
+    }
+}
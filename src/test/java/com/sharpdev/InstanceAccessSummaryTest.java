@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Tree;
+import org.openrewrite.java.JavaIsoVisitor;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.Expression;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.Statement;
+import org.openrewrite.scheduling.WatchableExecutionContext;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstanceAccessSummaryTest {
+
+    private static final String SOURCE = """
+            class A {
+                int x;
+                private int field() {
+                    return x;
+                }
+                private int call() {
+                    return field();
+                }
+                private Object self() {
+                    return this;
+                }
+                private Runnable lambda() {
+                    return () -> x++;
+                }
+                private int other(A a) {
+                    return a.x + a.field();
+                }
+            }
+            """;
+
+    @Test
+    void summarizesEveryMethod() {
+        ExecutionContext ctx = new InMemoryExecutionContext();
+        J.CompilationUnit cu = parse();
+        InstanceAccessSummary summary = InstanceAccessSummary.of(cu, ctx);
+
+        InstanceAccessSummary.MethodSummary field = summary.get(method(cu, "field"));
+        assertThat(field.isTouchesInstanceFields()).isTrue();
+        assertThat(field.isAccessesInstanceDirectly()).isTrue();
+        assertThat(field.getCallees()).isEmpty();
+
+        InstanceAccessSummary.MethodSummary call = summary.get(method(cu, "call"));
+        assertThat(call.isCallsInstanceMethods()).isTrue();
+        assertThat(call.isAccessesInstanceDirectly()).isFalse();
+        assertThat(call.getCallees()).containsExactly(summary.methodKey(method(cu, "field").getMethodType()));
+
+        InstanceAccessSummary.MethodSummary self = summary.get(method(cu, "self"));
+        assertThat(self.isUsesThis()).isTrue();
+        assertThat(self.isCapturesThisInLambda()).isFalse();
+
+        InstanceAccessSummary.MethodSummary lambda = summary.get(method(cu, "lambda"));
+        assertThat(lambda.isCapturesThisInLambda()).isTrue();
+        assertThat(lambda.isTouchesInstanceFields()).isTrue();
+
+        InstanceAccessSummary.MethodSummary other = summary.get(method(cu, "other"));
+        assertThat(other.usesInstance()).isFalse();
+    }
+
+    @Test
+    void cachedUntilSourceFileChanges() {
+        ExecutionContext ctx = new InMemoryExecutionContext();
+        J.CompilationUnit cu = parse();
+        InstanceAccessSummary summary = InstanceAccessSummary.of(cu, ctx);
+
+        assertThat(InstanceAccessSummary.of(cu, ctx)).isSameAs(summary);
+
+        J.CompilationUnit changed = cu.withSourcePath(Paths.get("B.java"));
+        InstanceAccessSummary resummarized = InstanceAccessSummary.of(changed, ctx);
+        assertThat(resummarized).isNotSameAs(summary);
+        assertThat(InstanceAccessSummary.of(changed, ctx)).isSameAs(resummarized);
+    }
+
+    @Test
+    void forgottenOnceReplaced() {
+        ExecutionContext ctx = new InMemoryExecutionContext();
+        J.CompilationUnit cu = parse();
+        J.CompilationUnit changed = cu.withSourcePath(Paths.get("B.java"));
+        InstanceAccessSummary summary = InstanceAccessSummary.of(changed, ctx);
+
+        // a summary of another LST of the same source file stays
+        InstanceAccessSummary.forget(cu, ctx);
+        assertThat(InstanceAccessSummary.of(changed, ctx)).isSameAs(summary);
+
+        InstanceAccessSummary.forget(changed, ctx);
+        assertThat(InstanceAccessSummary.of(changed, ctx)).isNotSameAs(summary);
+    }
+
+    @Test
+    void scanAgreesWithVisitor() {
+        Random random = new Random(2325);
+        List<String> sources = new ArrayList<>();
+        sources.add(SOURCE);
+        sources.add("""
+                class A {
+                    int x;
+                    private int anonymous() {
+                        return new Object() {
+                            int y;
+                            int get() {
+                                return x + y + A.this.x;
+                            }
+                        }.get();
+                    }
+                    private Runnable reference() {
+                        return this::anonymous;
+                    }
+                    private int[] array(int[] values) {
+                        values[x] = this.x > 0 ? -x : x;
+                        return values;
+                    }
+                }
+                """);
+        for (int i = 0; i < 20; i++) {
+            sources.add(RandomClasses.generate(random).source());
+        }
+
+        for (String source : sources) {
+            J.CompilationUnit cu = parse(source);
+            InstanceAccessSummary scanned = InstanceAccessSummary.of(cu, new InMemoryExecutionContext());
+            InstanceAccessSummary visited = InstanceAccessSummary.withVisitor(cu);
+            new JavaIsoVisitor<Integer>() {
+                @Override
+                public J.MethodDeclaration visitMethodDeclaration(J.MethodDeclaration method, Integer p) {
+                    assertThat(scanned.get(method)).as(source).isEqualTo(visited.get(method));
+                    return super.visitMethodDeclaration(method, p);
+                }
+
+                @Override
+                public J.Lambda visitLambda(J.Lambda lambda, Integer p) {
+                    assertThat(scanned.get(lambda)).as(source).isEqualTo(visited.get(lambda));
+                    return super.visitLambda(lambda, p);
+                }
+            }.visit(cu, 0);
+        }
+    }
+
+    @Test
+    void deeplyNestedConcatenationDoesNotOverflowStack() {
+        J.CompilationUnit cu = parse("""
+                class A {
+                    String s;
+                    private String concat() {
+                        return s + "";
+                    }
+                    private String empty() {
+                        return "";
+                    }
+                }
+                """);
+
+        // built rather than parsed, since the parser itself recurses on nested expressions
+        J.CompilationUnit concatenated = (J.CompilationUnit) new JavaIsoVisitor<Integer>() {
+            @Override
+            public J.Return visitReturn(J.Return r, Integer p) {
+                if (!(r.getExpression() instanceof J.Binary)) {
+                    return r;
+                }
+                J.Binary concat = (J.Binary) r.getExpression();
+                Expression chain = concat;
+                for (int i = 0; i < 100_000; i++) {
+                    chain = concat.withId(Tree.randomId()).withLeft(chain);
+                }
+                return r.withExpression(chain);
+            }
+        }.visitNonNull(cu, 0);
+
+        InstanceAccessSummary summary = InstanceAccessSummary.of(concatenated, new InMemoryExecutionContext());
+        assertThat(summary.get(method(concatenated, "concat")).isTouchesInstanceFields()).isTrue();
+
+        J.CompilationUnit after = (J.CompilationUnit) new MakePrivateOrFinalMethodsStatic().getVisitor()
+                .visit(concatenated, new WatchableExecutionContext(new InMemoryExecutionContext()));
+        assertThat(method(after, "concat").hasModifier(J.Modifier.Type.Static)).isFalse();
+        assertThat(method(after, "empty").hasModifier(J.Modifier.Type.Static)).isTrue();
+    }
+
+    private static J.CompilationUnit parse() {
+        return parse(SOURCE);
+    }
+
+    private static J.CompilationUnit parse(String source) {
+        return JavaParser.fromJavaVersion().build().parse(new InMemoryExecutionContext(), source).get(0);
+    }
+
+    private static J.MethodDeclaration method(J.CompilationUnit cu, String name) {
+        for (Statement statement : cu.getClasses().get(0).getBody().getStatements()) {
+            if (statement instanceof J.MethodDeclaration && ((J.MethodDeclaration) statement).getSimpleName().equals(name)) {
+                return (J.MethodDeclaration) statement;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
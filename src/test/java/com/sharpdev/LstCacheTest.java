@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Recipe;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LstCacheTest {
+
+    private static final Path SOURCE = Paths.get("p", "A.java");
+
+    @TempDir
+    Path dir;
+
+    private Path root;
+    private Path cacheDirectory;
+    private int parses;
+    private final List<Throwable> errors = new ArrayList<>();
+
+    @BeforeEach
+    void writeSource() throws Exception {
+        root = dir.resolve("src");
+        cacheDirectory = dir.resolve("cache");
+        write("package p;\nclass A {\n    int x;\n    private int twice(int a) {\n        return a * 2;\n    }\n}\n");
+    }
+
+    @Test
+    void unchangedSourceIsNotParsedAgain() {
+        LstCache cache = new LstCache(cacheDirectory, Collections.emptyList());
+        J.CompilationUnit parsed = load(cache).get(0);
+        J.CompilationUnit cached = load(new LstCache(cacheDirectory, Collections.emptyList())).get(0);
+
+        assertThat(parses).isEqualTo(1);
+        assertThat(cached.printAll()).isEqualTo(parsed.printAll());
+        assertThat(cached.getClasses().get(0).getType()).isNotNull();
+        // the recipe only finds the same method to change if the type attribution was kept
+        assertThat(patch(cached)).isEqualTo(patch(parsed));
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void recipesChangeCachedLstAsFreshlyParsedOne() throws Exception {
+        write("""
+                package p;
+                import java.util.List;
+                import java.util.function.IntSupplier;
+                class A<T> {
+                    int x;
+                    private int twice(int a) {
+                        return a * 2;
+                    }
+                    private int call() {
+                        return twice(x) + this.<Object>plain();
+                    }
+                    private <U> int plain() {
+                        return 1;
+                    }
+                    IntSupplier reference() {
+                        return this::plain;
+                    }
+                    private int sum(List<? extends Number> values) {
+                        int sum = 0;
+                        for (Number value : values) {
+                            sum += twice(value.intValue());
+                        }
+                        return sum;
+                    }
+                    private class Node {
+                        T item;
+                        Node next;
+                    }
+                    private class Counter {
+                        int count;
+                    }
+                }
+                """);
+        J.CompilationUnit parsed = load(new LstCache(cacheDirectory, Collections.emptyList())).get(0);
+        J.CompilationUnit cached = load(new LstCache(cacheDirectory, Collections.emptyList())).get(0);
+
+        assertThat(parses).isEqualTo(1);
+        assertThat(errors).isEmpty();
+        assertThat(patch(cached)).isEqualTo(patch(parsed));
+        assertThat(patch(new MakeInnerClassesStatic(), cached)).isEqualTo(patch(new MakeInnerClassesStatic(), parsed));
+    }
+
+    @Test
+    void changedSourceIsParsedAgain() throws Exception {
+        load(new LstCache(cacheDirectory, Collections.emptyList()));
+        write("package p;\nclass A {\n}\n");
+        J.CompilationUnit reloaded = load(new LstCache(cacheDirectory, Collections.emptyList())).get(0);
+
+        assertThat(parses).isEqualTo(2);
+        assertThat(reloaded.printAll()).isEqualTo("package p;\nclass A {\n}\n");
+    }
+
+    @Test
+    void changedClasspathInvalidatesEntries() throws Exception {
+        Path classes = Files.createDirectories(dir.resolve("classes"));
+        load(new LstCache(cacheDirectory, Collections.singletonList(classes)));
+        load(new LstCache(cacheDirectory, Collections.singletonList(classes)));
+        assertThat(parses).isEqualTo(1);
+
+        Files.write(classes.resolve("B.class"), new byte[]{1});
+        load(new LstCache(cacheDirectory, Collections.singletonList(classes)));
+        assertThat(parses).isEqualTo(2);
+    }
+
+    @Test
+    void entryThatCantBeWrittenIsReported() throws Exception {
+        // a file where the cache directory should be
+        Files.write(cacheDirectory, new byte[0]);
+        LstCache cache = new LstCache(cacheDirectory, Collections.emptyList());
+
+        assertThat(load(cache)).hasSize(1);
+        assertThat(errors).hasSize(1);
+    }
+
+    @Test
+    void unreadableEntryIsParsedAgain() throws Exception {
+        LstCache cache = new LstCache(cacheDirectory, Collections.emptyList());
+        load(cache);
+        Path entry = cache.entry(SOURCE);
+        byte[] bytes = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThat(load(cache)).hasSize(1);
+        assertThat(parses).isEqualTo(2);
+        assertThat(errors).singleElement().satisfies(e -> assertThat(e).hasMessageContaining(entry.toString()));
+        // and the entry has been written again
+        assertThat(load(cache)).hasSize(1);
+        assertThat(parses).isEqualTo(2);
+    }
+
+    private List<J.CompilationUnit> load(LstCache cache) {
+        return cache.load(root, SOURCE, () -> {
+            parses++;
+            return JavaParser.fromJavaVersion().build()
+                    .parse(Collections.singletonList(root.resolve(SOURCE)), root, new InMemoryExecutionContext());
+        }, new InMemoryExecutionContext(errors::add));
+    }
+
+    private void write(String source) throws Exception {
+        Files.createDirectories(root.resolve(SOURCE).getParent());
+        Files.write(root.resolve(SOURCE), source.getBytes());
+    }
+
+    private static String patch(J.CompilationUnit cu) {
+        return patch(new MakePrivateOrFinalMethodsStatic(), cu);
+    }
+
+    private static String patch(Recipe recipe, J.CompilationUnit cu) {
+        return recipe.run(Collections.singletonList(cu), new InMemoryExecutionContext()).getResults().get(0).diff();
+    }
+}
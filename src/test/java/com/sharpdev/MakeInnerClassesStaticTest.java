@@ -0,0 +1,305 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+import org.openrewrite.test.RecipeSpec;
+import org.openrewrite.test.RewriteTest;
+
+import static org.openrewrite.java.Assertions.java;
+
+@SuppressWarnings("ALL")
+class MakeInnerClassesStaticTest implements RewriteTest {
+
+    @Override
+    public void defaults(RecipeSpec spec) {
+        spec.recipe(new MakeInnerClassesStatic());
+    }
+
+    @Test
+    void innerClassWithoutOuterInstanceAccessChangesToStatic() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        int x;
+                        private class Node {
+                            int value;
+                            int twice() {
+                                return value * 2;
+                            }
+                        }
+                        Node create(A other) {
+                            return other.new Node();
+                        }
+                        Node create() {
+                            return new Node();
+                        }
+                    }
+                    """,
+                    """
+                    class A {
+                        int x;
+                        private static class Node {
+                            int value;
+                            int twice() {
+                                return value * 2;
+                            }
+                        }
+                        Node create(A other) {
+                            return new A.Node();
+                        }
+                        Node create() {
+                            return new Node();
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassUsingOuterFieldDoesNotChange() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        int x;
+                        private class Node {
+                            int get() {
+                                return x;
+                            }
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassCallingOuterMethodDoesNotChange() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        int get() {
+                            return 1;
+                        }
+                        private class Node {
+                            int twice() {
+                                return get() * 2;
+                            }
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassUsingQualifiedThisDoesNotChange() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        private class Node {
+                            Object outer() {
+                                return A.this;
+                            }
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void nonPrivateInnerClassDoesNotChange() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        class Node {
+                            int value;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassCreatingAnotherInnerClassChangesWithIt() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        private class Factory {
+                            Object create() {
+                                return new Node();
+                            }
+                        }
+                        private class Node {
+                        }
+                    }
+                    """,
+                    """
+                    class A {
+                        private static class Factory {
+                            Object create() {
+                                return new Node();
+                            }
+                        }
+                        private static class Node {
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassCreatingInnerClassUsingOuterInstanceDoesNotChange() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        int x;
+                        private class Factory {
+                            Object create() {
+                                return new Node();
+                            }
+                        }
+                        private class Node {
+                            int get() {
+                                return x;
+                            }
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassExtendingAnotherInnerClassDoesNotChange() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        int x;
+                        private class Base {
+                            int get() {
+                                return x;
+                            }
+                        }
+                        private class Derived extends Base {
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassUsingTypeVariableOfOuterClassDoesNotChange() {
+        rewriteRun(
+            java(
+                    """
+                    class MyList<E> {
+                        private class Node {
+                            E item;
+                            Node next;
+                        }
+                        private class Cursor<E> {
+                            E current;
+                        }
+                    }
+                    """,
+                    """
+                    class MyList<E> {
+                        private class Node {
+                            E item;
+                            Node next;
+                        }
+                        private static class Cursor<E> {
+                            E current;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassCreatedWithEnclosingInstanceFromCallDoesNotChange() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        private class Node {
+                            int value;
+                        }
+                        A parent() {
+                            return new A();
+                        }
+                        Node create() {
+                            return parent().new Node();
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void innerClassUsingItsOwnQualifiedThisChangesToStatic() {
+        rewriteRun(
+            java(
+                    """
+                    class A {
+                        int value;
+                        private class Node {
+                            int value;
+                            Runnable reset() {
+                                return new Runnable() {
+                                    public void run() {
+                                        Node.this.value = 0;
+                                    }
+                                };
+                            }
+                        }
+                    }
+                    """,
+                    """
+                    class A {
+                        int value;
+                        private static class Node {
+                            int value;
+                            Runnable reset() {
+                                return new Runnable() {
+                                    public void run() {
+                                        Node.this.value = 0;
+                                    }
+                                };
+                            }
+                        }
+                    }
+                    """
+            )
+        );
+    }
+}
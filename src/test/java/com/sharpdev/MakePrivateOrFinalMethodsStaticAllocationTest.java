@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.scheduling.WatchableExecutionContext;
+
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the bytes the recipe allocates per analyzed method on generated classes, once the JIT has warmed up, and
+ * fails when they exceed a budget. Parsing is not measured.
+ * <p>
+ * The budget can be set with the {@code rspec2325.allocation.maxBytesPerMethod} system property.
+ */
+class MakePrivateOrFinalMethodsStaticAllocationTest {
+
+    private static final long MAX_BYTES_PER_METHOD = Long.getLong("rspec2325.allocation.maxBytesPerMethod", 16 * 1024);
+
+    private static final int SIZE = 200;
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @ParameterizedTest
+    @EnumSource(value = GeneratedClasses.class, names = {"METHODS", "CHAIN_DEPTH", "NESTED_CLASSES"})
+    void allocationPerMethodIsWithinBudget(GeneratedClasses dimension) {
+        assertThat(THREADS.isThreadAllocatedMemorySupported()).isTrue();
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        J.CompilationUnit cu = JavaParser.fromJavaVersion().build()
+                .parse(new InMemoryExecutionContext(), dimension.source(SIZE)).get(0);
+        MakePrivateOrFinalMethodsStatic recipe = new MakePrivateOrFinalMethodsStatic();
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(recipe, cu, new AnalysisMetrics());
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long bytes = 0;
+        long methods = 0;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            AnalysisMetrics metrics = new AnalysisMetrics();
+            long before = THREADS.getThreadAllocatedBytes(threadId);
+            run(recipe, cu, metrics);
+            bytes += THREADS.getThreadAllocatedBytes(threadId) - before;
+            methods += metrics.getMethodsAnalyzed();
+        }
+
+        assertThat(methods).as("methods analyzed with %s", dimension).isPositive();
+        long bytesPerMethod = bytes / methods;
+        assertThat(bytesPerMethod)
+                .as("bytes allocated per analyzed method with %s: %d", dimension, bytesPerMethod)
+                .isLessThanOrEqualTo(MAX_BYTES_PER_METHOD);
+    }
+
+    private static void run(MakePrivateOrFinalMethodsStatic recipe, J.CompilationUnit cu, AnalysisMetrics metrics) {
+        InMemoryExecutionContext ctx = new InMemoryExecutionContext();
+        metrics.attachTo(ctx);
+        recipe.getVisitor().visit(cu, new WatchableExecutionContext(ctx));
+    }
+}
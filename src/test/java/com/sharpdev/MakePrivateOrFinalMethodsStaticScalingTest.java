@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.java.JavaParser;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.scheduling.WatchableExecutionContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the recipe on generated classes of increasing size and fits how the work grows with size. The assertion is on
+ * visited nodes rather than time, which keeps it stable on a shared machine; time is only reported.
+ */
+class MakePrivateOrFinalMethodsStaticScalingTest {
+
+    private static final double MAX_EXPONENT = Double.parseDouble(System.getProperty("rspec2325.scaling.maxExponent", "1.2"));
+
+    private static final int[] SIZES = {25, 50, 100, 200};
+
+    @ParameterizedTest
+    @EnumSource(GeneratedClasses.class)
+    void workGrowsLinearlyWithSize(GeneratedClasses dimension) {
+        double[] nodes = new double[SIZES.length];
+        double[] nanos = new double[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            J.CompilationUnit cu = JavaParser.fromJavaVersion().build()
+                    .parse(new InMemoryExecutionContext(), dimension.source(SIZES[i])).get(0);
+
+            InMemoryExecutionContext ctx = new InMemoryExecutionContext();
+            AnalysisMetrics metrics = new AnalysisMetrics();
+            metrics.attachTo(ctx);
+
+            long start = System.nanoTime();
+            new MakePrivateOrFinalMethodsStatic().getVisitor().visit(cu, new WatchableExecutionContext(ctx));
+            nanos[i] = System.nanoTime() - start;
+            nodes[i] = metrics.getNodesVisited();
+        }
+
+        double nodeExponent = exponent(nodes);
+        assertThat(nodeExponent)
+                .as("growth of visited nodes with %s: nodes grow as n^%.2f, time as n^%.2f", dimension, nodeExponent,
+                        exponent(nanos))
+                .isLessThanOrEqualTo(MAX_EXPONENT);
+    }
+
+    /**
+     * @return The slope of the least squares fit of log(value) against log(size).
+     */
+    private static double exponent(double[] values) {
+        int n = SIZES.length;
+        double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0;
+        for (int i = 0; i < n; i++) {
+            double x = Math.log(SIZES[i]);
+            double y = Math.log(Math.max(1, values[i]));
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+        return (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+    }
+}
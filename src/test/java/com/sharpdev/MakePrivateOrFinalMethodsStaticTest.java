@@ -16,11 +16,17 @@
 package com.sharpdev;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.openrewrite.test.RecipeSpec;
 import org.openrewrite.test.RewriteTest;
 
+import javax.tools.ToolProvider;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.openrewrite.java.Assertions.java;
 
 @SuppressWarnings("ALL")
@@ -894,5 +900,567 @@ class MakePrivateOrFinalMethodsStaticTest implements RewriteTest {
                     """                   
             )
         );
-    }          
-}
\ No newline at end of file
+    }
+
+    @Test
+    void withoutTypeAttributionParameterShadowingFieldChangesToStatic() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java("""
+                    class A {
+                        int x;
+                        private int foo(int x) {
+                            return bar(x);
+                        }
+                        private int bar(int y) {
+                            int x = y;
+                            return x + 1;
+                        }
+                    }
+                    """,
+                    """
+                    class A {
+                        int x;
+                        private static int foo(int x) {
+                            return bar(x);
+                        }
+                        private static int bar(int y) {
+                            int x = y;
+                            return x + 1;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionInstanceFieldDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java("""
+                    class A {
+                        int x;
+                        private int foo() {
+                            return bar();
+                        }
+                        private int bar() {
+                            return x;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionPossiblyInheritedMemberDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java("""
+                    import java.util.ArrayList;
+
+                    class A extends ArrayList<String> {
+                        private int foo() {
+                            return size();
+                        }
+                        private int bar() {
+                            return modCount;
+                        }
+                        private int baz(int a) {
+                            return Math.abs(a);
+                        }
+                    }
+                    """,
+                    """
+                    import java.util.ArrayList;
+
+                    class A extends ArrayList<String> {
+                        private int foo() {
+                            return size();
+                        }
+                        private int bar() {
+                            return modCount;
+                        }
+                        private static int baz(int a) {
+                            return Math.abs(a);
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionOverloadOfDifferentKindDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java("""
+                    class A {
+                        int x;
+                        private int foo() {
+                            return run(1);
+                        }
+                        private static int run(int a) {
+                            return a;
+                        }
+                        private int run(String a) {
+                            return x;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionCallThroughThisDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java(
+                    """
+                    class A {
+                        private int helper() {
+                            return 1;
+                        }
+                        private int call() {
+                            return this.helper();
+                        }
+                        private java.util.function.IntSupplier reference() {
+                            return this::helper;
+                        }
+                    }
+                    """,
+                    """
+                    class A {
+                        private static int helper() {
+                            return 1;
+                        }
+                        private int call() {
+                            return this.helper();
+                        }
+                        private java.util.function.IntSupplier reference() {
+                            return this::helper;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionObjectMethodDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java("""
+                    class A {
+                        private String describe() {
+                            return toString() + hashCode();
+                        }
+                        private boolean same(Object o) {
+                            return equals(o);
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionEnumMethodDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java("""
+                    enum E {
+                        X;
+                        private String label() {
+                            return name().toLowerCase();
+                        }
+                        private int position() {
+                            return ordinal();
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionDefaultMethodDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java("""
+                    interface I {
+                        default int one() {
+                            return 1;
+                        }
+                    }
+                    """
+            ),
+            java("""
+                    class A implements I {
+                        private int two() {
+                            return one() + 1;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionRecordComponentDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java("""
+                    record P(int x) {
+                        private int twice() {
+                            return x * 2;
+                        }
+                        private int next() {
+                            return x() + 1;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void serializationHooksAreUnchanged() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic()),
+            java(
+                    """
+                    import java.io.*;
+
+                    class A implements Serializable {
+                        private void writeObject(ObjectOutputStream out) throws IOException {
+                            out.defaultWriteObject();
+                        }
+                        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+                            in.defaultReadObject();
+                        }
+                        private Object readResolve() {
+                            return new A();
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void callingInheritedOrEnclosingInstanceMethodDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic()),
+            java(
+                    """
+                    import java.util.ArrayList;
+
+                    class A extends ArrayList<String> {
+                        private int count() {
+                            return size();
+                        }
+                        class B {
+                            private int outer() {
+                                return count();
+                            }
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void inheritedMemberUsedInAnonymousClassDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic()),
+            java(
+                    """
+                    import java.util.ArrayList;
+
+                    class A extends ArrayList<String> {
+                        private Runnable r() {
+                            return new Runnable() {
+                                public void run() {
+                                    size();
+                                }
+                            };
+                        }
+                        private Object own() {
+                            return new ArrayList<String>() {
+                                int count() {
+                                    return size();
+                                }
+                            };
+                        }
+                    }
+                    """,
+                    """
+                    import java.util.ArrayList;
+
+                    class A extends ArrayList<String> {
+                        private Runnable r() {
+                            return new Runnable() {
+                                public void run() {
+                                    size();
+                                }
+                            };
+                        }
+                        private static Object own() {
+                            return new ArrayList<String>() {
+                                int count() {
+                                    return size();
+                                }
+                            };
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void creatingInnerClassDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic()),
+            java(
+                    """
+                    class A {
+                        class B {
+                        }
+                        static class C {
+                        }
+                        private B make() {
+                            return new B();
+                        }
+                        private C makeNested() {
+                            return new C();
+                        }
+                    }
+                    """,
+                    """
+                    class A {
+                        class B {
+                        }
+                        static class C {
+                        }
+                        private B make() {
+                            return new B();
+                        }
+                        private static C makeNested() {
+                            return new C();
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void withoutTypeAttributionCreatingInnerClassDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(true, null)),
+            java(
+                    """
+                    class A {
+                        class B {
+                        }
+                        private B make() {
+                            return new B();
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void lambdasAndMethodReferencesNoLongerCaptureThis() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic())
+                    .dataTable(CapturingSitesRemoved.Row.class, rows -> assertThat(rows)
+                            .extracting(CapturingSitesRemoved.Row::getKind)
+                            .containsExactlyInAnyOrder("lambda", "method reference")),
+            java(
+                    """
+                    import java.util.function.IntUnaryOperator;
+
+                    class A {
+                        private int scale(int v) {
+                            return v * 2;
+                        }
+                        IntUnaryOperator lambda() {
+                            return v -> this.scale(v);
+                        }
+                        IntUnaryOperator reference() {
+                            return this::scale;
+                        }
+                    }
+                    """,
+                    """
+                    import java.util.function.IntUnaryOperator;
+
+                    class A {
+                        private static int scale(int v) {
+                            return v * 2;
+                        }
+                        IntUnaryOperator lambda() {
+                            return v -> scale(v);
+                        }
+                        IntUnaryOperator reference() {
+                            return A::scale;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void callThroughQualifiedThisIsUnqualified() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic()),
+            java(
+                    """
+                    class A {
+                        int x;
+                        private int helper() {
+                            return 1;
+                        }
+                        class B {
+                            int y;
+                            int get() {
+                                return A.this.helper() + y;
+                            }
+                        }
+                    }
+                    """,
+                    """
+                    class A {
+                        int x;
+                        private static int helper() {
+                            return 1;
+                        }
+                        class B {
+                            int y;
+                            int get() {
+                                return A.helper() + y;
+                            }
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void methodOfAnonymousClassReferredToThroughThisDoesNotChange() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic()),
+            java(
+                    """
+                    import java.util.function.IntSupplier;
+
+                    class A {
+                        Object make() {
+                            return new Object() {
+                                private int helper() {
+                                    return 1;
+                                }
+                                IntSupplier reference() {
+                                    return this::helper;
+                                }
+                            };
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void callWithExplicitTypeArgumentsKeepsASelect() {
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic()),
+            java(
+                    """
+                    import java.util.ArrayList;
+                    import java.util.List;
+
+                    class A {
+                        private <T> List<T> empty() {
+                            return new ArrayList<>();
+                        }
+                        List<String> names() {
+                            return this.<String>empty();
+                        }
+                    }
+                    """,
+                    """
+                    import java.util.ArrayList;
+                    import java.util.List;
+
+                    class A {
+                        private static <T> List<T> empty() {
+                            return new ArrayList<>();
+                        }
+                        List<String> names() {
+                            return A.<String>empty();
+                        }
+                    }
+                    """
+            )
+        );
+    }
+
+    @Test
+    void classFilesDecideInstanceAccess(@TempDir Path classes) throws Exception {
+        String source = """
+                class A {
+                    int x;
+                    private int foo() {
+                        return bar();
+                    }
+                    private int bar() {
+                        return 1;
+                    }
+                    private int other(A a) {
+                        return a.x;
+                    }
+                    private int own() {
+                        return x;
+                    }
+                }
+                """;
+        Path sourceFile = Files.createDirectories(classes.resolve("src")).resolve("A.java");
+        Files.write(sourceFile, source.getBytes());
+        assertThat(ToolProvider.getSystemJavaCompiler().run(null, null, null,
+                "-d", classes.toString(), sourceFile.toString())).isZero();
+
+        rewriteRun(
+            spec -> spec.recipe(new MakePrivateOrFinalMethodsStatic(null, classes.toString())),
+            java(source,
+                    """
+                    class A {
+                        int x;
+                        private static int foo() {
+                            return bar();
+                        }
+                        private static int bar() {
+                            return 1;
+                        }
+                        private static int other(A a) {
+                            return a.x;
+                        }
+                        private int own() {
+                            return x;
+                        }
+                    }
+                    """
+            )
+        );
+    }
+}
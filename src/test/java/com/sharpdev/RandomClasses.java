@@ -0,0 +1,421 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Generates random classes that compile, for comparing the engines of {@link MakePrivateOrFinalMethodsStatic}.
+ * <p>
+ * A class is kept as a model rather than as text, so that a class an engine gets wrong can be shrunk by dropping
+ * methods and statements for as long as the engine still gets it wrong.
+ * <p>
+ * Generated methods read and write fields, call each other and overloads of each other, also through {@code this},
+ * with explicit type arguments and by method references, create lambdas, anonymous and local classes, pass
+ * {@code this} around, create instances of the inner class and use fields and methods of another instance. They are
+ * declared in the top level class {@code A}, in a static nested class {@code N} and in an inner class {@code I}, whose
+ * methods also use the enclosing instance. A class may also be serializable with {@code writeObject} and
+ * {@code readObject} hooks.
+ */
+final class RandomClasses {
+
+    private static final String[] MODIFIERS = {"private", "private final", "final", "public", ""};
+
+    private RandomClasses() {
+    }
+
+    enum Scope {
+        TOP("m", "f0"),
+        NESTED("n", "g0"),
+        INNER("i", "h0");
+
+        private final String methodPrefix;
+        private final String instanceField;
+
+        Scope(String methodPrefix, String instanceField) {
+            this.methodPrefix = methodPrefix;
+            this.instanceField = instanceField;
+        }
+    }
+
+    enum Parameter {
+        NONE(""),
+        INT("int p"),
+        OTHER("A other");
+
+        private final String declaration;
+
+        Parameter(String declaration) {
+            this.declaration = declaration;
+        }
+
+        int arity() {
+            return this == NONE ? 0 : 1;
+        }
+    }
+
+    record Method(Scope scope, String modifiers, String name, Parameter parameter, List<String> statements,
+                  String result) {
+
+        Method withStatements(List<String> statements) {
+            return new Method(scope, modifiers, name, parameter, statements, result);
+        }
+
+        Method withResult(String result) {
+            return new Method(scope, modifiers, name, parameter, statements, result);
+        }
+
+        void appendTo(StringBuilder source, String indent) {
+            source.append(indent).append(modifiers).append(modifiers.isEmpty() ? "" : " ")
+                    .append("int ").append(name).append('(').append(parameter.declaration).append(") {\n");
+            for (String statement : statements) {
+                source.append(indent).append("    ").append(statement).append('\n');
+            }
+            source.append(indent).append("    return ").append(result).append(";\n")
+                    .append(indent).append("}\n");
+        }
+    }
+
+    /**
+     * The forms of code the engines are known to decide differently, each one more conservatively than the reference.
+     */
+    enum Form {
+        THIS_CALL("this\\.(<Object>)?[mni]\\d+\\("),
+        TYPE_ARGUMENTS("\\.<Object>"),
+        METHOD_REFERENCE("this::"),
+        CLASS_BODY("new java\\.util\\.function\\.IntSupplier\\(\\) \\{|class L\\d+ \\{");
+
+        private final Pattern pattern;
+
+        Form(String regex) {
+            this.pattern = Pattern.compile(regex);
+        }
+    }
+
+    record Program(boolean serializable, List<Method> methods) {
+
+        boolean uses(Form form) {
+            for (Method method : methods) {
+                for (String statement : method.statements()) {
+                    if (form.pattern.matcher(statement).find()) {
+                        return true;
+                    }
+                }
+                if (form.pattern.matcher(method.result()).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String source() {
+            StringBuilder source = new StringBuilder("class A")
+                    .append(serializable ? " implements java.io.Serializable" : "").append(" {\n")
+                    .append("    int f0;\n")
+                    .append("    static int s0;\n");
+            if (serializable) {
+                source.append("    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {\n")
+                        .append("        out.defaultWriteObject();\n")
+                        .append("    }\n")
+                        .append("    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {\n")
+                        .append("        in.defaultReadObject();\n")
+                        .append("    }\n");
+            }
+            appendMethods(source, Scope.TOP, "    ");
+            source.append("    static class N {\n        int g0;\n");
+            appendMethods(source, Scope.NESTED, "        ");
+            source.append("    }\n    class I {\n        int h0;\n");
+            appendMethods(source, Scope.INNER, "        ");
+            return source.append("    }\n}\n").toString();
+        }
+
+        /**
+         * @return true if every unqualified name can be resolved from the declarations of the class it is used in,
+         * which is what the engine that works without type attribution needs to decide every method.
+         */
+        boolean resolvableFromDeclarations() {
+            return methods.stream().noneMatch(m -> m.scope() == Scope.INNER);
+        }
+
+        /**
+         * @param fails Whether a program still shows the failure. Programs that don't compile should not.
+         * @return The smallest program reached by repeatedly removing a method or a statement, simplifying a result
+         * or dropping the serialization hooks, for which the failure still shows.
+         */
+        Program shrink(Predicate<Program> fails) {
+            Program smallest = this;
+            boolean shrunk = true;
+            while (shrunk) {
+                shrunk = false;
+                for (Program candidate : smallest.smaller()) {
+                    if (fails.test(candidate)) {
+                        smallest = candidate;
+                        shrunk = true;
+                        break;
+                    }
+                }
+            }
+            return smallest;
+        }
+
+        private List<Program> smaller() {
+            List<Program> smaller = new ArrayList<>();
+            if (serializable) {
+                smaller.add(new Program(false, methods));
+            }
+            for (int i = 0; i < methods.size(); i++) {
+                List<Method> without = new ArrayList<>(methods);
+                without.remove(i);
+                smaller.add(new Program(serializable, without));
+            }
+            for (int i = 0; i < methods.size(); i++) {
+                Method method = methods.get(i);
+                for (int j = 0; j < method.statements().size(); j++) {
+                    List<String> statements = new ArrayList<>(method.statements());
+                    statements.remove(j);
+                    smaller.add(with(i, method.withStatements(statements)));
+                }
+                if (!"0".equals(method.result())) {
+                    smaller.add(with(i, method.withResult("0")));
+                }
+            }
+            return smaller;
+        }
+
+        private Program with(int index, Method method) {
+            List<Method> replaced = new ArrayList<>(methods);
+            replaced.set(index, method);
+            return new Program(serializable, replaced);
+        }
+
+        private void appendMethods(StringBuilder source, Scope scope, String indent) {
+            for (Method method : methods) {
+                if (method.scope() == scope) {
+                    method.appendTo(source, indent);
+                }
+            }
+        }
+    }
+
+    static Program generate(Random random) {
+        List<Method> signatures = new ArrayList<>();
+        for (Scope scope : Scope.values()) {
+            int count = random.nextInt(6);
+            for (int i = 0; i < count; i++) {
+                String name = scope.methodPrefix + random.nextInt(Math.max(1, count - 1));
+                Parameter parameter = Parameter.values()[random.nextInt(Parameter.values().length)];
+                // overloads only ever differ in their number of parameters
+                boolean clash = signatures.stream().anyMatch(m -> m.name().equals(name) &&
+                                                                   m.parameter().arity() == parameter.arity());
+                if (!clash) {
+                    signatures.add(new Method(scope, MODIFIERS[random.nextInt(MODIFIERS.length)], name, parameter,
+                            List.of(), "0"));
+                }
+            }
+        }
+
+        List<Method> methods = new ArrayList<>();
+        for (Method signature : signatures) {
+            Body body = new Body(random, signature, signatures);
+            List<String> statements = new ArrayList<>();
+            int count = random.nextInt(4);
+            for (int i = 0; i < count; i++) {
+                statements.add(body.statement());
+            }
+            methods.add(signature.withStatements(statements).withResult(body.expression(2)));
+        }
+        return new Program(random.nextInt(4) == 0, methods);
+    }
+
+    /**
+     * Generates the statements and expressions of one method, using only what is in scope there.
+     */
+    private static class Body {
+        private final Random random;
+        private final Method method;
+        private final List<Method> callable = new ArrayList<>();
+        private final List<Method> topLevel = new ArrayList<>();
+        private int locals;
+
+        /**
+         * Within an anonymous or local class, where 'this' is no longer the instance of the method.
+         */
+        private boolean inClassBody;
+
+        Body(Random random, Method method, List<Method> signatures) {
+            this.random = random;
+            this.method = method;
+            for (Method signature : signatures) {
+                // an inner class can call the methods of its enclosing instance, a static nested class can't
+                if (signature.scope() == method.scope() ||
+                    (method.scope() == Scope.INNER && signature.scope() == Scope.TOP)) {
+                    callable.add(signature);
+                }
+                if (signature.scope() == Scope.TOP) {
+                    topLevel.add(signature);
+                }
+            }
+        }
+
+        String statement() {
+            switch (random.nextInt(10)) {
+                case 0:
+                    return "s0 += " + expression(2) + ";";
+                case 1:
+                    return method.scope().instanceField + " += " + expression(2) + ";";
+                case 2:
+                    return "int v" + locals++ + " = ((java.util.function.IntSupplier) () -> " + expression(2) +
+                           ").getAsInt();";
+                case 3:
+                    if (random.nextInt(3) == 0) {
+                        return "Object o" + locals++ + " = this;";
+                    }
+                    // fall through
+                case 4:
+                    if (method.scope() != Scope.NESTED && random.nextInt(2) == 0) {
+                        // the instance becomes the enclosing instance of the inner class
+                        return "Object o" + locals++ + " = new I();";
+                    }
+                    // fall through
+                case 5:
+                    if (random.nextInt(3) == 0) {
+                        String reference = methodReference();
+                        if (reference != null) {
+                            return "int v" + locals++ + " = " + reference + ";";
+                        }
+                    }
+                    // fall through
+                case 6:
+                    if (random.nextInt(3) == 0) {
+                        return "int v" + locals++ + " = new java.util.function.IntSupplier() { public int getAsInt() { return " +
+                               classBodyExpression() + "; } }.getAsInt();";
+                    }
+                    // fall through
+                case 7:
+                    if (random.nextInt(3) == 0) {
+                        int local = locals++;
+                        return "class L" + local + " { int get() { return " + classBodyExpression() + "; } } int v" +
+                               local + " = new L" + local + "().get();";
+                    }
+                    // fall through
+                default:
+                    return "int v" + locals++ + " = " + expression(2) + ";";
+            }
+        }
+
+        private String classBodyExpression() {
+            inClassBody = true;
+            String expression = expression(2);
+            inClassBody = false;
+            return expression;
+        }
+
+        /**
+         * @return A call through a method reference to a method of the same class, or null if there is none that
+         * fits a functional interface of {@code java.util.function}.
+         */
+        private String methodReference() {
+            List<Method> referable = new ArrayList<>();
+            for (Method callee : callable) {
+                if (callee.scope() == method.scope() && callee.parameter() != Parameter.OTHER) {
+                    referable.add(callee);
+                }
+            }
+            if (referable.isEmpty()) {
+                return null;
+            }
+            Method callee = referable.get(random.nextInt(referable.size()));
+            return callee.parameter() == Parameter.INT ?
+                    "((java.util.function.IntUnaryOperator) this::" + callee.name() + ").applyAsInt(" + expression(1) + ")" :
+                    "((java.util.function.IntSupplier) this::" + callee.name() + ").getAsInt()";
+        }
+
+        String expression(int depth) {
+            if (depth == 0) {
+                return leaf();
+            }
+            switch (random.nextInt(6)) {
+                case 0:
+                    return call(callable, depth);
+                case 1:
+                    if (method.parameter() == Parameter.OTHER && !topLevel.isEmpty()) {
+                        return "other." + call(topLevel, depth);
+                    }
+                    return leaf();
+                case 2:
+                    return "Math.abs(" + expression(depth - 1) + ")";
+                case 3:
+                    return "(" + expression(depth - 1) + " + " + expression(depth - 1) + ")";
+                default:
+                    return leaf();
+            }
+        }
+
+        private String call(List<Method> methods, int depth) {
+            if (methods.isEmpty()) {
+                return leaf();
+            }
+            Method callee = methods.get(random.nextInt(methods.size()));
+            String select = "";
+            if (!inClassBody && methods == callable && callee.scope() == method.scope()) {
+                // 'this' of an inner class is not the instance of the methods of the enclosing class
+                switch (random.nextInt(8)) {
+                    case 0:
+                        select = "this.";
+                        break;
+                    case 1:
+                        select = "this.<Object>";
+                        break;
+                    default:
+                        break;
+                }
+            }
+            switch (callee.parameter()) {
+                case INT:
+                    return select + callee.name() + "(" + expression(depth - 1) + ")";
+                case OTHER:
+                    return select + callee.name() + "(" + (method.parameter() == Parameter.OTHER ? "other" : "new A()") + ")";
+                default:
+                    return select + callee.name() + "()";
+            }
+        }
+
+        private String leaf() {
+            List<String> leaves = new ArrayList<>();
+            leaves.add(Integer.toString(random.nextInt(10)));
+            leaves.add("s0");
+            leaves.add(method.scope().instanceField);
+            if (!inClassBody) {
+                leaves.add("this." + method.scope().instanceField);
+            }
+            if (method.parameter() == Parameter.INT) {
+                leaves.add("p");
+            }
+            if (method.parameter() == Parameter.OTHER) {
+                leaves.add("other.f0");
+            }
+            if (method.scope() == Scope.INNER) {
+                leaves.add("f0");
+                leaves.add("A.this.f0");
+            }
+            return leaves.get(random.nextInt(leaves.size()));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecipeProgressTest {
+
+    @Test
+    void publishedOnPlatformMBeanServerWhileRunning(@TempDir Path root) throws Exception {
+        List<Path> sources = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Path source = Paths.get("p", "A" + i + ".java");
+            Files.createDirectories(root.resolve(source).getParent());
+            Files.write(root.resolve(source), String.format(
+                    "package p;\n" +
+                    "class A%d {\n" +
+                    "    int x;\n" +
+                    "    private int get() {\n" +
+                    "        return x;\n" +
+                    "    }\n" +
+                    "    private int twice(int a) {\n" +
+                    "        return a * 2;\n" +
+                    "    }\n" +
+                    "}\n", i).getBytes());
+            sources.add(source);
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(RecipeProgress.OBJECT_NAME);
+        try (RecipeProgress progress = RecipeProgress.register()) {
+            RecipeRunner.run(root, sources, Collections.emptyList(), progress);
+
+            assertThat(server.getAttribute(name, "FilesProcessed")).isEqualTo(3L);
+            assertThat(server.getAttribute(name, "MethodsAnalyzed")).isEqualTo(6L);
+            assertThat(server.getAttribute(name, "MethodsConverted")).isEqualTo(3L);
+            assertThat(server.getAttribute(name, "CurrentFile")).isEqualTo("p/A2.java");
+            assertThat(server.getAttribute(name, "PassesPerFile")).isEqualTo(1.0);
+            assertThat((Double) server.getAttribute(name, "FilesPerSecond")).isPositive();
+            double average = (Double) server.getAttribute(name, "AverageFileLatencyMillis");
+            assertThat(average).isPositive();
+            assertThat((Double) server.getAttribute(name, "P99FileLatencyMillis")).isPositive();
+        }
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+
+    @Test
+    void latencyBucketsAreWithinAnEighth() {
+        for (long micros = 0; micros < 1_000_000; micros += 7) {
+            long upperBound = RecipeProgress.upperBound(RecipeProgress.bucket(micros));
+            assertThat(upperBound).isGreaterThanOrEqualTo(micros);
+            assertThat(upperBound - micros).isLessThanOrEqualTo(micros / 8);
+        }
+    }
+}
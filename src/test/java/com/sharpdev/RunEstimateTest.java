@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RunEstimateTest {
+
+    @Test
+    void moduleIsThePathBeforeSrc() {
+        assertThat(RunEstimate.module("core/src/main/java/p/A.java")).isEqualTo("core");
+        assertThat(RunEstimate.module("libs/io/src/main/java/p/A.java")).isEqualTo("libs/io");
+        assertThat(RunEstimate.module("src/main/java/p/A.java")).isEqualTo("");
+        assertThat(RunEstimate.module("p/A.java")).isEqualTo("p");
+    }
+
+    @Test
+    void everyStratumIsSampled() {
+        List<SourceFileCost> files = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            files.add(new SourceFileCost(Paths.get("big/src/C" + i + ".java"), 100, 100));
+        }
+        files.add(new SourceFileCost(Paths.get("small/src/C.java"), 100, 100));
+        files.add(new SourceFileCost(Paths.get("small/src/Large.java"), 100_000, 100_000));
+
+        SortedMap<String, List<SourceFileCost>> sample =
+                RunEstimate.sample(RunEstimate.strata(files), 10, new Random(0));
+
+        assertThat(sample).hasSize(3);
+        assertThat(sample.get("big #0")).hasSize(10);
+        assertThat(sample.get("small #0")).hasSize(1);
+        assertThat(sample.get("small #3")).hasSize(1);
+    }
+
+    @Test
+    void stratifiedTotal() {
+        Map<String, Integer> populations = new HashMap<>();
+        populations.put("a", 10);
+        populations.put("b", 4);
+        Map<String, double[]> observations = new HashMap<>();
+        observations.put("a", new double[]{1, 3});
+        observations.put("b", new double[]{5, 5, 5, 5});
+
+        RunEstimate.Interval total = RunEstimate.total(populations, observations);
+
+        // 10 * 2 + 4 * 5, and only stratum a has a variance: 10^2 * (1 - 2/10) * 2 / 2 = 80
+        assertThat(total.getEstimate()).isEqualTo(40);
+        assertThat(total.getHigh() - total.getEstimate()).isCloseTo(1.96 * Math.sqrt(80), within(1e-9));
+    }
+
+    @Test
+    void extrapolatesMethodsMadeStatic(@TempDir Path root) throws Exception {
+        for (String module : new String[]{"a", "b"}) {
+            for (int i = 0; i < 10; i++) {
+                Path source = root.resolve(module).resolve("src/main/java/p/A" + i + ".java");
+                Files.createDirectories(source.getParent());
+                Files.write(source, String.format(
+                        "package p;\n" +
+                        "class A%d {\n" +
+                        "    int x;\n" +
+                        "    private int get() {\n" +
+                        "        return x;\n" +
+                        "    }\n" +
+                        "    private int twice(int a) {\n" +
+                        "        return a * 2;\n" +
+                        "    }\n" +
+                        "}\n", i).getBytes());
+            }
+        }
+
+        RunEstimate estimate = RunEstimate.estimate(root, SourceFileCost.scan(root), Collections.emptyList(), 6, 1);
+
+        assertThat(estimate.getTotalFiles()).isEqualTo(20);
+        assertThat(estimate.getStrata()).isEqualTo(2);
+        assertThat(estimate.getSampledFiles()).isEqualTo(6);
+        // every file has one method to make static out of two, so there is nothing to be uncertain about
+        assertThat(estimate.getMethodsMadeStatic().getEstimate()).isEqualTo(20);
+        assertThat(estimate.getMethodsMadeStatic().getHigh()).isEqualTo(20);
+        assertThat(estimate.getMethodsAnalyzed().getEstimate()).isEqualTo(40);
+        assertThat(estimate.getRuntimeMillis().getEstimate()).isPositive();
+        assertThat(estimate.getPeakHeapBytes()).isPositive();
+        assertThat(estimate.getFailures()).isEmpty();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 the original author or authors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sharpdev;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceFileShardsTest {
+
+    @Test
+    void partitionDoesNotDependOnInputOrder() {
+        List<SourceFileCost> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(new SourceFileCost(Paths.get("pkg" + i % 5, "C" + i + ".java"), i * 37 % 11, i * 37 % 11));
+        }
+        List<SourceFileCost> shuffled = new ArrayList<>(files);
+        Collections.shuffle(shuffled);
+
+        assertThat(SourceFileShards.partition(shuffled, 4)).isEqualTo(SourceFileShards.partition(files, 4));
+    }
+
+    @Test
+    void partitionBalancesCost() {
+        List<SourceFileCost> files = new ArrayList<>();
+        files.add(new SourceFileCost(Paths.get("Big.java"), 1000, 1000));
+        for (int i = 0; i < 10; i++) {
+            files.add(new SourceFileCost(Paths.get("Small" + i + ".java"), 100, 100));
+        }
+
+        List<List<Path>> shards = SourceFileShards.partition(files, 2);
+
+        assertThat(shards.get(0)).containsExactly(Paths.get("Big.java"));
+        assertThat(shards.get(1)).hasSize(10);
+    }
+
+    @Test
+    void shardsRunInSeparateJvmsMergeToSingleRunResult(@TempDir Path dir) throws Exception {
+        Path root = dir.resolve("src");
+        for (int i = 0; i < 6; i++) {
+            Path source = root.resolve("p" + i % 2).resolve("A" + i + ".java");
+            Files.createDirectories(source.getParent());
+            Files.write(source, String.format(
+                    "package p%d;\n" +
+                    "class A%d {\n" +
+                    "    int x;\n" +
+                    "    private int get() {\n" +
+                    "        return x;\n" +
+                    "    }\n" +
+                    "    private int twice(int a) {\n" +
+                    "        return a * 2;\n" +
+                    "    }\n" +
+                    "}\n", i % 2, i).getBytes());
+        }
+
+        List<Path> shardOutputs = new ArrayList<>();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Path out = dir.resolve("shard-" + i + ".bin");
+            shardOutputs.add(out);
+            processes.add(new ProcessBuilder(
+                    Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    RecipeRunner.class.getName(),
+                    "--root", root.toString(),
+                    "--shard", i + "/3",
+                    "--out", out.toString())
+                    .inheritIO()
+                    .start());
+        }
+        for (Process process : processes) {
+            assertThat(process.waitFor(5, TimeUnit.MINUTES)).isTrue();
+            assertThat(process.exitValue()).isZero();
+        }
+
+        List<ShardResult> shards = new ArrayList<>();
+        for (Path out : shardOutputs) {
+            shards.add(ShardResult.read(out));
+        }
+        ShardResult merged = ShardResult.merge(shards);
+
+        ShardResult single = RecipeRunner.run(root, allSources(root), Collections.emptyList());
+        assertThat(merged.getFiles()).isEqualTo(single.getFiles());
+        assertThat(merged.patch()).contains("private static int twice(int a)");
+    }
+
+    @Test
+    void columnNamesAndFailuresAreKeptWithRows(@TempDir Path dir) throws Exception {
+        SortedMap<String, List<String>> columns = new TreeMap<>();
+        columns.put("table", Arrays.asList("kind", "name"));
+        SortedMap<String, List<List<String>>> rows = new TreeMap<>();
+        rows.put("table", Collections.singletonList(Arrays.asList("method", "twice")));
+        ShardResult result = new ShardResult();
+        result.add("p/A.java", new ShardResult.FileOutcome("", columns, rows, Collections.emptyList()));
+        result.add("p/B.java", new ShardResult.FileOutcome("", new TreeMap<>(), new TreeMap<>(),
+                Collections.singletonList(ShardResult.describe(new IllegalStateException("broken")))));
+
+        Path out = dir.resolve("shard.bin");
+        result.write(out);
+        ShardResult read = ShardResult.read(out);
+
+        assertThat(read.getFiles()).isEqualTo(result.getFiles());
+        assertThat(read.columns("table")).containsExactly("kind", "name");
+        assertThat(read.rows("table")).containsExactly(Arrays.asList("method", "twice"));
+        assertThat(read.failures()).containsOnlyKeys("p/B.java");
+        assertThat(read.failures().get("p/B.java")).singleElement().asString().contains("broken");
+    }
+
+    private static List<Path> allSources(Path root) {
+        List<Path> sources = new ArrayList<>();
+        for (SourceFileCost file : SourceFileCost.scan(root)) {
+            sources.add(file.getPath());
+        }
+        Collections.sort(sources);
+        return sources;
+    }
+}